@@ -0,0 +1,76 @@
+package broker.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark that compares LongObjectHashMap with a HashMap of boxed keys under the access
+ * pattern of the broker: a sliding window of sequential IDs in flight, each put when a
+ * quote or aggregation starts, looked up when a reply arrives and removed when it completes.
+ * Run with ./gradlew :broker:jmh, the gc profiler reports the allocated bytes per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LongObjectHashMapBenchmark {
+
+    /**
+     * Store the number of IDs in flight
+     */
+    @Param({"16", "1024", "65536"})
+    public int inFlight;
+
+    /**
+     * Declare the maps under test, the value that is stored and the next ID
+     */
+    private LongObjectHashMap<Object> longObjectHashMap;
+    private Map<Long, Object> hashMap;
+    private Object value;
+    private long nextId;
+
+    @Setup
+    public void setUp() {
+        this.longObjectHashMap = new LongObjectHashMap<>();
+        this.hashMap = new HashMap<>();
+        this.value = new Object();
+        for (long id = 0; id < this.inFlight; id++) {
+            this.longObjectHashMap.put(id, this.value);
+            this.hashMap.put(id, this.value);
+        }
+        this.nextId = this.inFlight;
+    }
+
+    @Benchmark
+    public Object longObjectHashMap() {
+        long id = this.nextId++;
+        this.longObjectHashMap.put(id, this.value);
+        Object reply = this.longObjectHashMap.get(id - this.inFlight / 2);
+        this.longObjectHashMap.remove(id - this.inFlight);
+        return reply;
+    }
+
+    @Benchmark
+    public Object hashMap() {
+        long id = this.nextId++;
+        this.hashMap.put(id, this.value);
+        Object reply = this.hashMap.get(id - this.inFlight / 2);
+        this.hashMap.remove(id - this.inFlight);
+        return reply;
+    }
+}
@@ -2,21 +2,26 @@ package broker.application;
 
 import broker.gateway.BrokerInsuranceClientGateway;
 import broker.gateway.HospitalClientScatterGather;
+import broker.gateway.PipelineStage;
+import broker.gateway.QuoteContext;
+import broker.gateway.QuoteSloMonitor;
 import broker.gateway.TransportServiceClient;
-import broker.model.client.TreatmentCostsReply;
-import broker.model.client.TreatmentCostsRequest;
-import broker.model.hospital.HospitalCostsReply;
-import broker.model.hospital.HospitalCostsRequest;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
+import model.client.QuotePriority;
+import model.client.TreatmentCostsReply;
+import model.client.TreatmentCostsRequest;
+import model.hospital.HospitalCostsReply;
+import model.hospital.HospitalCostsRequest;
 
 
 import javafx.scene.control.ListView;
 
-import javax.jms.Destination;
 import javax.jms.JMSException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Class responsible for controlling all the
@@ -25,6 +30,11 @@ import java.util.Map;
  */
 public class BrokerController {
 
+    /**
+     * Store the logger of the broker, java.util.logging so no logging library is needed
+     */
+    private static final Logger LOGGER = Logger.getLogger(BrokerController.class.getName());
+
     /**
      * Store broker and insurance client queue name
      */
@@ -32,6 +42,15 @@ public class BrokerController {
     private static final String JMS_BROKER_HOSPITAL_CLIENT_QUEUE_NAME = "broker-hospital-client-queue";
     private static final String JMS_INSURANCE_CLIENT_QUEUE_NAME = "insurance-client-queue";
 
+    /**
+     * Store how many events can wait in every stage of the pipeline and how many threads
+     * every stage has, the transport lookup calls a web service so it gets the most
+     */
+    private static final int STAGE_CAPACITY = 1_024;
+    private static final int FAN_OUT_STAGE_THREADS = 1;
+    private static final int TRANSPORT_PRICING_STAGE_THREADS = 4;
+    private static final int REPLY_STAGE_THREADS = 1;
+
     /**
      * Declare BrokerInsuranceClientGateway, Scatter-Gather and TransportServiceClient
      */
@@ -40,9 +59,14 @@ public class BrokerController {
     private TransportServiceClient transportServiceClient;
 
     /**
-     * Declare mappings to map HospitalCostsRequest to TreatmentCostsRequest
+     * Declare the stages of the pipeline a quote passes after it is admitted: sending the
+     * hospital requests, pricing the transport of the best hospital reply and replying.
+     * Deserializing the requests and aggregating the hospital replies happen on the
+     * threads of their JMS consumers, which only hand the quote over to the next stage.
      */
-    private Map<HospitalCostsRequest, TreatmentCostsRequest> hospitalCostsReqToTreatmentCostsReq;
+    private PipelineStage<QuoteContext> fanOutStage;
+    private PipelineStage<QuoteEvent> transportPricingStage;
+    private PipelineStage<QuoteEvent> replyStage;
 
     /**
      * Declare JavaFX objects
@@ -56,66 +80,231 @@ public class BrokerController {
      * the scatter-gather and transport service client
      */
     public BrokerController() {
-        this.hospitalCostsReqToTreatmentCostsReq = new HashMap<>();
         this.transportServiceClient = new TransportServiceClient();
 
+        // initialize the stages before the gateways start handing over quotes
+        this.fanOutStage = new PipelineStage<QuoteContext>("fan-out", STAGE_CAPACITY, FAN_OUT_STAGE_THREADS) {
+            public void process(QuoteContext quoteContext) {
+                sendHospitalCostsRequest(quoteContext);
+            }
+        };
+        this.transportPricingStage = new PipelineStage<QuoteEvent>(
+                "transport-pricing", STAGE_CAPACITY, TRANSPORT_PRICING_STAGE_THREADS) {
+            public void process(QuoteEvent quoteEvent) {
+                priceTreatmentCosts(quoteEvent);
+            }
+        };
+        this.replyStage = new PipelineStage<QuoteEvent>("reply", STAGE_CAPACITY, REPLY_STAGE_THREADS) {
+            public void process(QuoteEvent quoteEvent) {
+                sendTreatmentCostsReply(quoteEvent);
+            }
+        };
+
         try {
             // initialize BrokerInsuranceClientGateway
             this.brokerInsuranceClientGateway = new BrokerInsuranceClientGateway(
                     JMS_INSURANCE_CLIENT_QUEUE_NAME,
                     JMS_BROKER_INSURANCE_CLIENT_QUEUE_NAME
             ) {
-                public void onTreatmentCostsRequestArrived(TreatmentCostsRequest treatmentCostsRequest) {
-                    // create HospitalCostsRequest from the received TreatmentCostsRequest
-                    HospitalCostsRequest hospitalCostsRequest = new HospitalCostsRequest(
-                            treatmentCostsRequest.getSsn(),
-                            treatmentCostsRequest.getTreatmentCode(),
-                            treatmentCostsRequest.getAge());
-                    // map HospitalCostsRequest t
-                    hospitalCostsReqToTreatmentCostsReq.put(hospitalCostsRequest, treatmentCostsRequest);
-                    // create BrokerListLine and add to ListView TreatmentCostsRequest
-                    BrokerListLine brokerListLine = new BrokerListLine(treatmentCostsRequest, null);
-                    addBrokerListLineToListView(brokerListLine);
-                    try {
-                        hospitalClientScatterGather.requestApproximation(hospitalCostsRequest);
-                    } catch (JMSException e) {
-                        e.printStackTrace();
-                    }
+                public void onTreatmentCostsRequestArrived(QuoteContext quoteContext) {
+                    // hand the quote over to the fan-out stage
+                    submit(fanOutStage, quoteContext);
                 }
             };
 
             //initialize HospitalClientScatterGather and implement callback
             this.hospitalClientScatterGather = new HospitalClientScatterGather(JMS_BROKER_HOSPITAL_CLIENT_QUEUE_NAME) {
-                public void onHospitalCostsReplyReceived(
-                        HospitalCostsRequest hospitalCostsRequest, HospitalCostsReply hospitalCostsReply) {
-                    // get TreatmentCostsRequest from map
-                    TreatmentCostsRequest treatmentCostsRequest =
-                            hospitalCostsReqToTreatmentCostsReq.get(hospitalCostsRequest);
-                    // calculate transport costs and set in TreatmentCostsReply
-                    double transportCosts = calculateTransportPrice(treatmentCostsRequest.getTransportDistance());
-                    TreatmentCostsReply treatmentCostsReply = new TreatmentCostsReply(
-                            hospitalCostsReply.getPrice(),
-                            transportCosts,
-                            hospitalCostsReply.getHospitalName()
-                    );
-                    // send the TreatmentCostsRequest and TreatmentCostsReply to the insurance client
-                    try {
-                        brokerInsuranceClientGateway.replyOnTreatmentCostsRequest(
-                                treatmentCostsRequest,treatmentCostsReply);
-                    } catch (JMSException e) {
-                        e.printStackTrace();
+                public void onHospitalCostsReplyReceived(long quoteId, HospitalCostsReply hospitalCostsReply) {
+                    // no hospital replied in time, tell the insurance client no quote is available
+                    if (hospitalCostsReply == null) {
+                        QuoteContext quoteContext = failQuote(quoteId);
+                        LOGGER.warning("No hospital replied in time to " + quoteContext);
+                        return;
                     }
-                    // update ListView
-                    BrokerListLine brokerListLine = findBrokerListLineByTreatmentCostsRequest(treatmentCostsRequest);
-                    brokerListLine.setReply(treatmentCostsReply);
-                    lvRequestReply.refresh();
+                    // get the QuoteContext and hand the quote over to the transport pricing stage
+                    QuoteContext quoteContext = brokerInsuranceClientGateway.getQuoteContext(quoteId);
+                    if (quoteContext == null) return;
+                    submit(transportPricingStage, new QuoteEvent(quoteContext, hospitalCostsReply));
                 }
             };
         } catch (JMSException | NullPointerException e) {
-            e.printStackTrace();
+            LOGGER.log(Level.SEVERE, "The broker could not be initialized", e);
+        }
+    }
+
+    /**
+     * Method that runs on the fan-out stage, creates the HospitalCostsRequest
+     * of a quote and sends it to the hospitals
+     *
+     * @param quoteContext the QuoteContext of the quote
+     */
+    private void sendHospitalCostsRequest(QuoteContext quoteContext) {
+        TreatmentCostsRequest treatmentCostsRequest = quoteContext.getTreatmentCostsRequest();
+        // create HospitalCostsRequest from the received TreatmentCostsRequest
+        HospitalCostsRequest hospitalCostsRequest = new HospitalCostsRequest(
+                treatmentCostsRequest.getSsn(),
+                treatmentCostsRequest.getTreatmentCode(),
+                treatmentCostsRequest.getAge());
+        // create BrokerListLine and add to ListView TreatmentCostsRequest
+        BrokerListLine brokerListLine = new BrokerListLine(treatmentCostsRequest, null);
+        addBrokerListLineToListView(brokerListLine);
+        // the quote ID is carried through the aggregation as aggregationId
+        try {
+            this.hospitalClientScatterGather.requestApproximation(
+                    hospitalCostsRequest,
+                    quoteContext.getQuoteId(),
+                    quoteContext.getDeadline(),
+                    quoteContext.getPriority());
+        } catch (JMSException e) {
+            // the hospitals cannot be asked, free the quote and tell the insurance client
+            LOGGER.log(Level.WARNING, "The hospitals could not be asked for " + quoteContext, e);
+            failQuote(quoteContext.getQuoteId());
+        }
+    }
+
+    /**
+     * Method that runs on the transport pricing stage, calculates the transport costs
+     * of a quote and hands the TreatmentCostsReply over to the reply stage
+     *
+     * @param quoteEvent the quote with the best HospitalCostsReply
+     */
+    private void priceTreatmentCosts(QuoteEvent quoteEvent) {
+        TreatmentCostsRequest treatmentCostsRequest = quoteEvent.quoteContext.getTreatmentCostsRequest();
+        // calculate transport costs and set in TreatmentCostsReply
+        double transportCosts;
+        try {
+            transportCosts = calculateTransportPrice(treatmentCostsRequest.getTransportDistance());
+        } catch (RuntimeException e) {
+            // the transport service is not available, tell the insurance client no quote is available
+            failQuote(quoteEvent.quoteContext.getQuoteId());
+            LOGGER.log(Level.WARNING, "No transport price for " + quoteEvent.quoteContext, e);
+            return;
+        }
+        quoteEvent.treatmentCostsReply = new TreatmentCostsReply(
+                quoteEvent.hospitalCostsReply.getPrice(),
+                transportCosts,
+                quoteEvent.hospitalCostsReply.getHospitalName()
+        );
+        submit(this.replyStage, quoteEvent);
+    }
+
+    /**
+     * Method that runs on the reply stage and sends the TreatmentCostsReply
+     * of a quote to the insurance client
+     *
+     * @param quoteEvent the quote with its TreatmentCostsReply
+     */
+    private void sendTreatmentCostsReply(QuoteEvent quoteEvent) {
+        // send the TreatmentCostsRequest and TreatmentCostsReply to the insurance client
+        try {
+            this.brokerInsuranceClientGateway.replyOnTreatmentCostsRequest(
+                    quoteEvent.quoteContext.getQuoteId(),
+                    quoteEvent.treatmentCostsReply);
+        } catch (JMSException e) {
+            LOGGER.log(Level.WARNING, "The reply could not be sent for " + quoteEvent.quoteContext, e);
+        }
+        // update ListView
+        BrokerListLine brokerListLine = findBrokerListLineByTreatmentCostsRequest(
+                quoteEvent.quoteContext.getTreatmentCostsRequest());
+        if (brokerListLine == null) return;
+        brokerListLine.setReply(quoteEvent.treatmentCostsReply);
+        Platform.runLater(() -> this.lvRequestReply.refresh());
+    }
+
+    /**
+     * Method that releases a quote that cannot be priced and sends the insurance client
+     * an unavailable reply, so that it stops waiting for the quote
+     *
+     * @param quoteId the ID of the quote
+     * @return QuoteContext of the released quote, or null if it was already answered
+     */
+    private QuoteContext failQuote(long quoteId) {
+        try {
+            return this.brokerInsuranceClientGateway.failQuote(quoteId, TreatmentCostsReply.unavailable());
+        } catch (JMSException e) {
+            // the quote is released, the insurance client times out
+            LOGGER.log(Level.WARNING, "The unavailable reply could not be sent for quote " + quoteId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Method that hands an event over to a stage, waiting while the stage is full
+     *
+     * @param pipelineStage the stage to hand the event to
+     * @param event the event
+     * @param <E> the type of the events of the stage
+     */
+    private static <E> void submit(PipelineStage<E> pipelineStage, E event) {
+        try {
+            pipelineStage.submit(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Method that shuts the broker down without losing quotes: no new TreatmentCostsRequests
+     * are consumed, the quotes in flight get until the timeout to be answered or released,
+     * the quotes that are still in flight then get a busy reply so that the insurance clients
+     * can send them again, the metrics are logged, the JMS resources are closed and the threads of the
+     * pipeline stages are stopped
+     *
+     * @param drainTimeoutMillis how long the quotes in flight get to complete in milliseconds
+     */
+    public void shutdown(long drainTimeoutMillis) {
+        if (this.brokerInsuranceClientGateway == null || this.hospitalClientScatterGather == null) return;
+        // leave the requests that were not consumed yet in the queue for the other broker instances
+        this.brokerInsuranceClientGateway.stopConsuming();
+        try {
+            if (!this.brokerInsuranceClientGateway.awaitQuotesCompleted(drainTimeoutMillis)) {
+                int rejected = this.brokerInsuranceClientGateway.rejectQuotesInFlight();
+                LOGGER.warning(rejected + " quotes did not complete before shutdown and got a busy reply");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        printMetrics();
+        this.hospitalClientScatterGather.close();
+        this.brokerInsuranceClientGateway.close();
+        // stop the stages last, no callback hands them a quote anymore
+        for (PipelineStage<?> pipelineStage : getPipelineStages()) {
+            pipelineStage.close();
         }
     }
 
+    /**
+     * Method that writes the metrics of the pipeline stages, the priority classes
+     * the dead-letter channels and the duplicate and late hospital replies to the log
+     */
+    private void printMetrics() {
+        for (PipelineStage<?> pipelineStage : getPipelineStages()) {
+            LOGGER.info(pipelineStage.toString());
+        }
+        QuoteSloMonitor quoteSloMonitor = this.brokerInsuranceClientGateway.getQuoteSloMonitor();
+        for (QuotePriority priority : QuotePriority.values()) {
+            LOGGER.info(String.format("%s: completed %d, SLO attainment %.3f, average latency %.0f ms, p95 %d ms",
+                    priority,
+                    quoteSloMonitor.getCompleted(priority),
+                    quoteSloMonitor.getAttainment(priority),
+                    quoteSloMonitor.getAverageLatency(priority),
+                    quoteSloMonitor.getLatencyPercentile(priority, 0.95)));
+        }
+        LOGGER.info(this.brokerInsuranceClientGateway.getDeadLetterChannel().toString());
+        LOGGER.info(this.hospitalClientScatterGather.getDeadLetterChannel().toString());
+        LOGGER.info("duplicate hospital replies: " + this.hospitalClientScatterGather.getDuplicateReplies());
+        LOGGER.info("late hospital replies: " + this.hospitalClientScatterGather.getLateReplies());
+    }
+
+    /**
+     * Method that returns the stages of the pipeline, e.g. for reading their metrics
+     *
+     * @return List of the PipelineStages in the order a quote passes them
+     */
+    public List<PipelineStage<?>> getPipelineStages() {
+        return Arrays.asList(this.fanOutStage, this.transportPricingStage, this.replyStage);
+    }
+
     /**
      * Method that adds BrokerListLine to the lvRequestsReply
      *
@@ -136,7 +325,7 @@ public class BrokerController {
      */
     private BrokerListLine findBrokerListLineByTreatmentCostsRequest(TreatmentCostsRequest treatmentCostsRequest) {
         for(BrokerListLine bll : this.lvRequestReply.getItems()) {
-            if(treatmentCostsRequest.equals(bll.getRequest())) return bll;
+            if(treatmentCostsRequest == bll.getRequest()) return bll;
         }
         return null;
     }
@@ -157,4 +346,19 @@ public class BrokerController {
         }
         return 0;
     }
+
+    /**
+     * A quote that passes the transport pricing and reply stages
+     * with the best HospitalCostsReply and the resulting TreatmentCostsReply
+     */
+    private static class QuoteEvent {
+        private final QuoteContext quoteContext;
+        private final HospitalCostsReply hospitalCostsReply;
+        private TreatmentCostsReply treatmentCostsReply;
+
+        private QuoteEvent(QuoteContext quoteContext, HospitalCostsReply hospitalCostsReply) {
+            this.quoteContext = quoteContext;
+            this.hospitalCostsReply = hospitalCostsReply;
+        }
+    }
 }
@@ -1,8 +1,8 @@
 package broker.application;
 
 
-import broker.model.client.TreatmentCostsReply;
-import broker.model.client.TreatmentCostsRequest;
+import model.client.TreatmentCostsReply;
+import model.client.TreatmentCostsRequest;
 
 public class BrokerListLine {
 
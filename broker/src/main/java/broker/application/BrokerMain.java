@@ -16,6 +16,11 @@ import static javafx.application.Application.launch;
 
 public class BrokerMain extends Application {
 
+    /**
+     * Store how long the quotes in flight get to complete when the broker is closed
+     */
+    private static final long DRAIN_TIMEOUT_MILLIS = 30_000;
+
     @Override
     public void start(Stage primaryStage) throws Exception {
         String fxml = "broker.fxml";
@@ -28,8 +33,15 @@ public class BrokerMain extends Application {
             primaryStage.setTitle("Insurance broker");
             primaryStage.setScene(new Scene(root, 500, 300));
             primaryStage.setOnCloseRequest(t -> {
-                Platform.exit();
-                System.exit(0);
+                // drain the quotes in flight off the JavaFX thread, which keeps updating the list
+                t.consume();
+                primaryStage.hide();
+                Thread shutdownThread = new Thread(() -> {
+                    brokerController.shutdown(DRAIN_TIMEOUT_MILLIS);
+                    Platform.exit();
+                    System.exit(0);
+                }, "broker-shutdown");
+                shutdownThread.start();
             });
             primaryStage.show();
         } else {
@@ -0,0 +1,114 @@
+package broker.gateway;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A class responsible for limiting how many quotes are in flight at the same time,
+ * both in total and per reply destination, so that a burst from one insurer
+ * cannot flood the hospital queues or grow the memory of the broker without limit
+ */
+public class AdmissionController {
+
+    /**
+     * Store the maximum number of quotes in flight in total and per reply destination
+     */
+    private final int maxInFlight;
+    private final int maxInFlightPerDestination;
+
+    /**
+     * Store the number of quotes in flight in total and per reply destination
+     */
+    private int inFlight;
+    private Map<String, Integer> destinationToInFlightMap;
+
+    /**
+     * Store the number of quotes that were rejected
+     */
+    private long rejected;
+
+    /**
+     * Constructor that sets the limits
+     *
+     * @param maxInFlight the maximum number of quotes in flight in total
+     * @param maxInFlightPerDestination the maximum number of quotes in flight per reply destination
+     */
+    public AdmissionController(int maxInFlight, int maxInFlightPerDestination) {
+        this.maxInFlight = maxInFlight;
+        this.maxInFlightPerDestination = maxInFlightPerDestination;
+        this.destinationToInFlightMap = new HashMap<>();
+    }
+
+    /**
+     * Method that admits a quote if neither limit is reached
+     *
+     * @param destination the reply destination of the quote
+     * @return true if the quote is admitted, false if it has to be rejected
+     */
+    public synchronized boolean tryAdmit(String destination) {
+        if (!canAdmit(destination)) {
+            this.rejected++;
+            return false;
+        }
+        addInFlight(destination);
+        return true;
+    }
+
+    /**
+     * Method that waits until a quote can be admitted and then admits it
+     *
+     * @param destination the reply destination of the quote
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public synchronized void admit(String destination) throws InterruptedException {
+        while (!canAdmit(destination)) {
+            wait();
+        }
+        addInFlight(destination);
+    }
+
+    /**
+     * Method that frees the place of a quote that was answered or released
+     *
+     * @param destination the reply destination of the quote
+     */
+    public synchronized void release(String destination) {
+        Integer destinationInFlight = this.destinationToInFlightMap.get(destination);
+        if (destinationInFlight == null) return;
+        if (destinationInFlight == 1) {
+            this.destinationToInFlightMap.remove(destination);
+        } else {
+            this.destinationToInFlightMap.put(destination, destinationInFlight - 1);
+        }
+        this.inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * Method that returns the number of quotes in flight
+     *
+     * @return the number of quotes in flight in total
+     */
+    public synchronized int getInFlight() {
+        return this.inFlight;
+    }
+
+    /**
+     * Method that returns the number of quotes that were rejected
+     *
+     * @return the number of rejected quotes
+     */
+    public synchronized long getRejected() {
+        return this.rejected;
+    }
+
+    private boolean canAdmit(String destination) {
+        return this.inFlight < this.maxInFlight
+                && this.destinationToInFlightMap.getOrDefault(destination, 0) < this.maxInFlightPerDestination;
+    }
+
+    private void addInFlight(String destination) {
+        this.inFlight++;
+        this.destinationToInFlightMap.merge(destination, 1, Integer::sum);
+    }
+}
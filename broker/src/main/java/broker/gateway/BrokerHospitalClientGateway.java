@@ -1,13 +1,22 @@
 package broker.gateway;
 
-import broker.model.hospital.HospitalCostsReply;
-import broker.model.hospital.HospitalCostsRequest;
+import broker.util.LongObjectHashMap;
+import model.client.QuotePriority;
+import model.hospital.HospitalCostsReply;
+import model.hospital.HospitalCostsReplyBatchItem;
+import model.hospital.HospitalCostsRequest;
+import model.hospital.HospitalCostsRequestBatchItem;
 
+import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Message;
-import javax.jms.TextMessage;
-import java.util.HashMap;
+import javax.jms.MessageFormatException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A class that is responsible for delegating
@@ -15,6 +24,39 @@ import java.util.Map;
  */
 public class BrokerHospitalClientGateway {
 
+    /**
+     * Store the name of the property in which a hospital puts its request queue name
+     * and the separator ActiveMQ uses for composite destinations
+     */
+    private static final String HOSPITAL_QUEUE_NAME_PROPERTY = "hospitalQueueName";
+    private static final String COMPOSITE_DESTINATION_SEPARATOR = ",";
+
+    /**
+     * Store the name of the property that marks a batch message
+     * and the limits of a batch of HospitalCostsRequests
+     */
+    private static final String BATCH_PROPERTY = "batch";
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final long BATCH_WINDOW_MILLIS = 5;
+
+    /**
+     * Store the message body length from which a message is sent compressed,
+     * negative to never compress
+     */
+    private static final int COMPRESSION_THRESHOLD = 1024;
+
+    /**
+     * Store how often a reply that failed with a JMSException is handled again
+     * and how long the first retry waits in milliseconds
+     */
+    private static final int MAX_REDELIVERIES = 3;
+    private static final long INITIAL_REDELIVERY_BACKOFF_MILLIS = 100;
+
+    /**
+     * Store how long closing the gateway waits for the scheduled retries in milliseconds
+     */
+    private static final long CLOSE_TIMEOUT_MILLIS = 1_000;
+
     /**
      * Declare Consumer and Producer to delegate
      * consumption and production of messages respectively
@@ -22,77 +64,385 @@ public class BrokerHospitalClientGateway {
     private Consumer consumer;
     private Producer producer;
 
+    /**
+     * Store the destination the hospitals reply to, which is set as JMSReplyTo of every
+     * request so that the replies come back to the broker instance that holds the aggregation
+     */
+    private Destination replyDestination;
+
     /**
      * Declare HospitalCostsSerializer for (de)serializing HospitalCosts objects
      */
     private HospitalCostsSerializer hospitalCostsSerializer;
 
     /**
-     * Map ID to a HospitalCostsRequest in order to distinguish which
-     * HospitalCostsRequest corresponds to a received HospitalCostsReply
+     * Map ID to the queue name of the hospital a single-queue HospitalCostsRequest was
+     * meant for, which for a hedged request is the queue of the primary hospital.
+     * Replies to a request sent to several queues at once carry the queue name instead.
+     */
+    private Map<String, String> correlationToHospitalQueueMap;
+
+    /**
+     * Map the aggregationId to the IDs of its single-queue requests in the
+     * correlationToHospitalQueueMap, so that the requests that are never answered,
+     * e.g. the losers of hedged requests, are released together with their aggregation
      */
-    private Map<String, HospitalCostsRequest> correlationToHospitalCostsRequestMap;
+    private LongObjectHashMap<List<String>> aggregationToCorrelationIdsMap;
+
+    /**
+     * Declare HospitalPerformanceMonitor that keeps track
+     * of the reply latency of every hospital queue
+     */
+    private HospitalPerformanceMonitor hospitalPerformanceMonitor;
+
+    /**
+     * Declare the DeadLetterChannel that retries the replies that failed
+     * and forwards the malformed and orphaned ones to the dead-letter queue
+     */
+    private DeadLetterChannel deadLetterChannel;
+
+    /**
+     * Declare the HospitalRequestBatcher, which is null when batching is off,
+     * and the prefix and counter for the correlation IDs of batched requests
+     */
+    private HospitalRequestBatcher hospitalRequestBatcher;
+    private String batchCorrelationIdPrefix;
+    private AtomicLong batchCorrelationIdGenerator;
 
     /**
      * Constructor that initialized the consumer, the producer, the
-     * correlationToHospitalCostsRequestMap, the HospitalCostsSerializer
-     * and sets consumer event listener
+     * correlationToHospitalQueueMap, the HospitalCostsSerializer,
+     * the HospitalPerformanceMonitor and sets consumer event listener
      *
      * @param consumerQueueName the name of the queue the consumer listens to
      */
     public BrokerHospitalClientGateway(String consumerQueueName) throws JMSException {
-        this.consumer = new Consumer(consumerQueueName);
+        this(consumerQueueName, false);
+    }
+
+    /**
+     * Constructor that initialized the consumer, the producer, the
+     * correlationToHospitalQueueMap, the HospitalCostsSerializer,
+     * the HospitalPerformanceMonitor, optionally the HospitalRequestBatcher
+     * and sets consumer event listener
+     *
+     * @param consumerQueueName the name of the queue the consumer listens to
+     * @param batching true to group requests for the same hospital into batch messages
+     */
+    public BrokerHospitalClientGateway(String consumerQueueName, boolean batching) throws JMSException {
+        this(new Consumer(consumerQueueName), consumerQueueName + DeadLetterChannel.DEAD_LETTER_QUEUE_SUFFIX, batching);
+    }
+
+    /**
+     * Constructor that initialized the producer, the correlationToHospitalQueueMap,
+     * the HospitalCostsSerializer, the HospitalPerformanceMonitor, optionally the
+     * HospitalRequestBatcher, the DeadLetterChannel and sets event listener of the given consumer,
+     * whose destination the hospitals reply to, e.g. a temporary queue of this broker instance
+     *
+     * @param consumer the consumer of the replies
+     * @param deadLetterQueueName the queue the replies that cannot be handled are forwarded to
+     * @param batching true to group requests for the same hospital into batch messages
+     */
+    public BrokerHospitalClientGateway(Consumer consumer, String deadLetterQueueName, boolean batching)
+            throws JMSException {
+        this.consumer = consumer;
+        this.replyDestination = consumer.getDestination();
         this.producer = new Producer();
         this.hospitalCostsSerializer = new HospitalCostsSerializer();
-        this.correlationToHospitalCostsRequestMap = new HashMap<>();
+        this.correlationToHospitalQueueMap = new ConcurrentHashMap<>();
+        this.aggregationToCorrelationIdsMap = new LongObjectHashMap<>();
+        this.hospitalPerformanceMonitor = new HospitalPerformanceMonitor();
+        this.deadLetterChannel = new DeadLetterChannel(
+                deadLetterQueueName,
+                MAX_REDELIVERIES,
+                INITIAL_REDELIVERY_BACKOFF_MILLIS);
+        if (batching) {
+            this.batchCorrelationIdPrefix = "batch:" + UUID.randomUUID() + ":";
+            this.batchCorrelationIdGenerator = new AtomicLong();
+            this.hospitalRequestBatcher = new HospitalRequestBatcher(MAX_BATCH_SIZE, BATCH_WINDOW_MILLIS) {
+                public void onBatchReady(String queueName, List<HospitalCostsRequestBatchItem> batch) {
+                    sendHospitalCostsRequestBatch(queueName, batch);
+                }
+            };
+        }
 
-        this.consumer.setConsumerMessageListener(message -> {
-            try {
-                // typecast received message to TextMessage
-                TextMessage msg = (TextMessage) message;
-                // get the HospitalCostsReply from the message
+        // failures of the listener are retried or dead-lettered by the DeadLetterChannel
+        this.consumer.setConsumerMessageListener(this.deadLetterChannel.guard(message -> {
+            // read the (compressed) message body
+            String messageBody = Consumer.readMessageBody(message);
+            // get the queue the hospital consumed the request from
+            String repliedQueueName = message.getStringProperty(HOSPITAL_QUEUE_NAME_PROPERTY);
+            if (message.propertyExists(BATCH_PROPERTY) && message.getBooleanProperty(BATCH_PROPERTY)) {
+                // unpack the batch and handle every HospitalCostsReply on its own
+                List<HospitalCostsReplyBatchItem> batch =
+                        this.hospitalCostsSerializer.deserializeHospitalCostsReplyBatchJSON(messageBody);
+                // a malformed or orphaned item must not keep the other items of the batch from being handled
+                MessageFormatException messageFormatException = null;
+                OrphanedMessageException orphanedMessageException = null;
+                for (HospitalCostsReplyBatchItem batchItem : batch) {
+                    try {
+                        handleHospitalCostsReply(
+                                batchItem.getReply(),
+                                batchItem.getCorrelationID(),
+                                batchItem.getAggregationID(),
+                                repliedQueueName);
+                    } catch (MessageFormatException e) {
+                        messageFormatException = e;
+                    } catch (OrphanedMessageException e) {
+                        orphanedMessageException = e;
+                    }
+                }
+                if (messageFormatException != null) throw messageFormatException;
+                if (orphanedMessageException != null) throw orphanedMessageException;
+            } else {
+                // get the price and hospital name of the HospitalCostsReply from the message
                 HospitalCostsReply hospitalCostsReply =
-                        this.hospitalCostsSerializer.deserializeHospitalCostsReplyJSON(msg.getText());
-                // get the HospitalCostsRequest from map with JMSCorrelationID
-                HospitalCostsRequest hospitalCostsRequest =
-                        this.correlationToHospitalCostsRequestMap.get(msg.getJMSCorrelationID());
-                // push necessary information
-                onHospitalCostsReplyReceived(
-                        hospitalCostsRequest,
+                        this.hospitalCostsSerializer.deserializeHospitalCostsReplyWithoutAddressJSON(messageBody);
+                handleHospitalCostsReply(
                         hospitalCostsReply,
-                        msg.getIntProperty("aggregationID"));
-            } catch (JMSException e) {
-                e.printStackTrace();
+                        message.getJMSCorrelationID(),
+                        message.getLongProperty("aggregationID"),
+                        repliedQueueName);
             }
-        });
+        }));
+    }
+
+    /**
+     * Method that finds the hospital belonging to a received
+     * HospitalCostsReply and pushes them through the callback
+     *
+     * @param hospitalCostsReply the received HospitalCostsReply
+     * @param correlationId the ID of the request the reply belongs to
+     * @param aggregationId the aggregation the reply belongs to
+     * @param repliedQueueName the queue the hospital consumed the request from
+     * @throws MessageFormatException if the reply has no correlation ID or tells no hospital
+     * @throws OrphanedMessageException if no aggregation is waiting for the reply
+     */
+    private void handleHospitalCostsReply(
+            HospitalCostsReply hospitalCostsReply,
+            String correlationId,
+            long aggregationId,
+            String repliedQueueName
+    ) throws MessageFormatException {
+        if (correlationId == null) {
+            throw new MessageFormatException("Reply to aggregation " + aggregationId + " has no correlation ID.");
+        }
+        // get the queue the reply counts for
+        String hospitalQueueName = this.correlationToHospitalQueueMap.remove(correlationId);
+        if (hospitalQueueName == null) hospitalQueueName = repliedQueueName;
+        if (repliedQueueName == null) repliedQueueName = hospitalQueueName;
+        // a reply that tells no hospital cannot be told apart from the replies of the others
+        if (hospitalQueueName == null) {
+            throw new MessageFormatException("Reply " + correlationId + " has no hospital queue name.");
+        }
+        // update the reply latency of the queue
+        this.hospitalPerformanceMonitor.replyReceived(repliedQueueName, correlationId);
+        // push necessary information
+        onHospitalCostsReplyReceived(hospitalCostsReply, aggregationId, correlationId, hospitalQueueName);
+    }
+
+    /**
+     * Method that releases the IDs of the single-queue requests of an aggregation
+     * that completed or expired, a reply that still arrives for one of them is
+     * counted for the queue it came from
+     *
+     * @param aggregationId the identifier of the aggregation
+     */
+    public void releaseAggregation(long aggregationId) {
+        List<String> correlationIds;
+        synchronized (this.aggregationToCorrelationIdsMap) {
+            correlationIds = this.aggregationToCorrelationIdsMap.remove(aggregationId);
+        }
+        if (correlationIds == null) return;
+        for (String correlationId : correlationIds) {
+            this.correlationToHospitalQueueMap.remove(correlationId);
+        }
     }
 
     /**
      * Method that prepares the JMS message, sets all necessary field
-     * (aggregationID), then sends the message and maps the JMSMessageID
-     * to HospitalCostsRequest
+     * (aggregationID), then sends the message to a hospital queue
      *
      * @param hospitalCostsRequest to be sent
-     * @param aggregationId Integer property to be set in the created JMS message
+     * @param aggregationId long property to be set in the created JMS message
      * @param hospitalQueueName where the HospitalCostsRequest will be sent
      * @throws JMSException if something goes wrong with JMS
      */
     public void requestApproximation(
             HospitalCostsRequest hospitalCostsRequest,
-            Integer aggregationId,
+            long aggregationId,
             String hospitalQueueName
+    ) throws JMSException {
+        requestApproximation(
+                hospitalCostsRequest,
+                aggregationId,
+                hospitalQueueName,
+                hospitalQueueName,
+                QuotePriority.NORMAL);
+    }
+
+    /**
+     * Method that prepares the JMS message, sets all necessary field
+     * (aggregationID), then sends the message to a given queue on behalf
+     * of a hospital, e.g. to the replica queue of a slow hospital
+     *
+     * @param hospitalCostsRequest to be sent
+     * @param aggregationId long property to be set in the created JMS message
+     * @param queueName where the HospitalCostsRequest will be sent
+     * @param hospitalQueueName the queue name of the hospital the reply is counted for
+     * @param priority the priority class of the quote, which decides the JMSPriority
+     * @throws JMSException if something goes wrong with JMS
+     */
+    public void requestApproximation(
+            HospitalCostsRequest hospitalCostsRequest,
+            long aggregationId,
+            String queueName,
+            String hospitalQueueName,
+            QuotePriority priority
     ) throws JMSException {
         // serialize to JSON string the HospitalCostsRequest
         String hospitalCostsRequestJSON =
                 this.hospitalCostsSerializer.serializeHospitalCostsRequest(hospitalCostsRequest);
         // create the message
-        Message message = this.producer.createMessage(hospitalCostsRequestJSON);
-        // set aggregationId int property in the message
-        message.setIntProperty("aggregationID", aggregationId);
+        Message message = this.producer.createMessage(hospitalCostsRequestJSON, COMPRESSION_THRESHOLD);
+        // set aggregationId long property and the queue to reply to in the message
+        message.setLongProperty("aggregationID", aggregationId);
+        message.setJMSReplyTo(this.replyDestination);
         // send the message to a given queue
-        this.producer.sendMessage(message, hospitalQueueName);
-        // map the JMSMessageID to HospitalCostsRequest
-        this.correlationToHospitalCostsRequestMap.put(message.getJMSMessageID(), hospitalCostsRequest);
+        this.producer.sendMessage(message, queueName, priority.getJMSPriority());
+        // map the JMSMessageID to the hospital queue name
+        this.correlationToHospitalQueueMap.put(message.getJMSMessageID(), hospitalQueueName);
+        synchronized (this.aggregationToCorrelationIdsMap) {
+            List<String> correlationIds = this.aggregationToCorrelationIdsMap.get(aggregationId);
+            if (correlationIds == null) {
+                correlationIds = new ArrayList<>(2);
+                this.aggregationToCorrelationIdsMap.put(aggregationId, correlationIds);
+            }
+            correlationIds.add(message.getJMSMessageID());
+        }
+        // start measuring the reply latency of the queue
+        this.hospitalPerformanceMonitor.requestSent(queueName, message.getJMSMessageID());
+    }
+
+    /**
+     * Method that serializes the HospitalCostsRequest once and publishes it in a single
+     * send to an ActiveMQ composite destination made of all given hospital queues.
+     * Every hospital replies with the JMSMessageID as JMSCorrelationID and its
+     * own queue name as property, so the replies are still told apart.
+     * When batching is on, the request is added to the batch of every queue instead,
+     * unless it is URGENT, which is never held back to fill a batch.
+     *
+     * @param hospitalCostsRequest to be sent
+     * @param aggregationId long property to be set in the created JMS message
+     * @param hospitalQueueNames the queues where the HospitalCostsRequest will be sent
+     * @param priority the priority class of the quote, which decides the JMSPriority
+     * @throws JMSException if something goes wrong with JMS
+     */
+    public void requestApproximation(
+            HospitalCostsRequest hospitalCostsRequest,
+            long aggregationId,
+            List<String> hospitalQueueNames,
+            QuotePriority priority
+    ) throws JMSException {
+        if (this.hospitalRequestBatcher != null && priority != QuotePriority.URGENT) {
+            batchApproximation(hospitalCostsRequest, aggregationId, hospitalQueueNames, priority);
+            return;
+        }
+        // serialize to JSON string the HospitalCostsRequest
+        String hospitalCostsRequestJSON =
+                this.hospitalCostsSerializer.serializeHospitalCostsRequest(hospitalCostsRequest);
+        // create the message
+        Message message = this.producer.createMessage(hospitalCostsRequestJSON, COMPRESSION_THRESHOLD);
+        // set aggregationId long property and the queue to reply to in the message
+        message.setLongProperty("aggregationID", aggregationId);
+        message.setJMSReplyTo(this.replyDestination);
+        // send the message once to the composite destination of all queues
+        this.producer.sendMessage(
+                message,
+                String.join(COMPOSITE_DESTINATION_SEPARATOR, hospitalQueueNames),
+                priority.getJMSPriority());
+        // start measuring the reply latency of every queue
+        for (String hospitalQueueName : hospitalQueueNames) {
+            this.hospitalPerformanceMonitor.requestSent(hospitalQueueName, message.getJMSMessageID());
+        }
+    }
+
+    /**
+     * Method that adds the HospitalCostsRequest to the batch of every given hospital queue
+     * under one generated correlation ID, which the hospitals reply with per batch item,
+     * the JMSPriority travels with the item so the hospital replies with the same priority
+     *
+     * @param hospitalCostsRequest to be sent
+     * @param aggregationId the aggregation the request belongs to
+     * @param hospitalQueueNames the queues where the HospitalCostsRequest will be sent
+     * @param priority the priority class of the quote, which decides the JMSPriority
+     */
+    private void batchApproximation(
+            HospitalCostsRequest hospitalCostsRequest,
+            long aggregationId,
+            List<String> hospitalQueueNames,
+            QuotePriority priority
+    ) {
+        String correlationId = this.batchCorrelationIdPrefix + this.batchCorrelationIdGenerator.incrementAndGet();
+        HospitalCostsRequestBatchItem batchItem = new HospitalCostsRequestBatchItem(
+                correlationId, aggregationId, hospitalCostsRequest, priority.getJMSPriority());
+        for (String hospitalQueueName : hospitalQueueNames) {
+            this.hospitalPerformanceMonitor.requestSent(hospitalQueueName, correlationId);
+            this.hospitalRequestBatcher.addHospitalCostsRequest(hospitalQueueName, batchItem);
+        }
+    }
+
+    /**
+     * Method that serializes a batch of HospitalCostsRequests and sends it as one message
+     * to a hospital queue, with the highest JMSPriority of the requests in the batch
+     *
+     * @param queueName where the batch will be sent
+     * @param batch the HospitalCostsRequests with their correlation and aggregation IDs
+     */
+    private void sendHospitalCostsRequestBatch(String queueName, List<HospitalCostsRequestBatchItem> batch) {
+        try {
+            Message message = this.producer.createMessage(
+                    this.hospitalCostsSerializer.serializeHospitalCostsRequestBatch(batch),
+                    COMPRESSION_THRESHOLD);
+            message.setBooleanProperty(BATCH_PROPERTY, true);
+            message.setJMSReplyTo(this.replyDestination);
+            int priority = 0;
+            for (HospitalCostsRequestBatchItem batchItem : batch) {
+                priority = Math.max(priority, batchItem.getPriority());
+            }
+            this.producer.sendMessage(message, queueName, priority);
+        } catch (JMSException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Method that returns the HospitalPerformanceMonitor
+     * that keeps track of the hospital queues this gateway sends to
+     *
+     * @return HospitalPerformanceMonitor of this gateway
+     */
+    public HospitalPerformanceMonitor getHospitalPerformanceMonitor() {
+        return this.hospitalPerformanceMonitor;
+    }
+
+    /**
+     * Method that stops consuming HospitalCostsReplies and closes the JMS resources of the gateway
+     */
+    public void close() {
+        this.consumer.close();
+        this.deadLetterChannel.close(CLOSE_TIMEOUT_MILLIS);
+        this.producer.close();
+    }
+
+    /**
+     * Method that returns the DeadLetterChannel, e.g. for reading
+     * how many replies were retried, malformed, orphaned or dead-lettered
+     *
+     * @return DeadLetterChannel of this gateway
+     */
+    public DeadLetterChannel getDeadLetterChannel() {
+        return this.deadLetterChannel;
     }
 
     /**
@@ -100,12 +450,16 @@ public class BrokerHospitalClientGateway {
      * an instance of this class to be able to handle the
      * received HospitalCostsReply
      *
-     * @param hospitalCostsRequest the corresponding HospitalCostsRequest
      * @param hospitalCostsReply the received HospitalCostsReply
-     * @param aggregationId Integer property that is set in the message
+     * @param aggregationId long property that is set in the message
+     * @param correlationId the ID of the request the reply belongs to
+     * @param hospitalQueueName the queue name of the hospital the reply is counted for
+     * @throws OrphanedMessageException if no aggregation is waiting for the reply,
+     *                                  which forwards the reply to the dead-letter queue
      */
     public void onHospitalCostsReplyReceived(
-            HospitalCostsRequest hospitalCostsRequest,
             HospitalCostsReply hospitalCostsReply,
-            Integer aggregationId) {}
+            long aggregationId,
+            String correlationId,
+            String hospitalQueueName) {}
 }
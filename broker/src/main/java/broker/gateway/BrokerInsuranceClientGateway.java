@@ -1,14 +1,20 @@
 package broker.gateway;
 
-import broker.model.client.TreatmentCostsReply;
-import broker.model.client.TreatmentCostsRequest;
+import broker.util.LongObjectHashMap;
+import model.client.QuotePriority;
+import model.client.TreatmentCostsReply;
+import model.client.TreatmentCostsRequest;
 
 import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Message;
+import javax.jms.MessageFormatException;
 import javax.jms.TextMessage;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A class that is responsible for delegating
@@ -16,6 +22,52 @@ import java.util.Map;
  */
 public class BrokerInsuranceClientGateway {
 
+    /**
+     * Store how long the broker has to answer a quote, which is also the SLO of
+     * its priority class, URGENT quotes are answered with the best reply so far
+     */
+    private static final long QUOTE_TIMEOUT_MILLIS = 120_000;
+    private static final long URGENT_QUOTE_TIMEOUT_MILLIS = 10_000;
+
+    /**
+     * Store the treatment code prefixes of requests that are URGENT
+     * when the insurance client did not set a priority class
+     */
+    private static final String[] URGENT_TREATMENT_CODE_PREFIXES = {"EMR"};
+
+    /**
+     * Store the admission limits: how many quotes can be in flight in total and per
+     * client lane, and whether a quote over the limit gets a busy reply right
+     * away or waits, which pauses the consumption of new requests
+     */
+    private static final int MAX_QUOTES_IN_FLIGHT = 1_000;
+    private static final int MAX_QUOTES_IN_FLIGHT_PER_DESTINATION = 200;
+    private static final boolean REJECT_WHEN_BUSY = true;
+
+    /**
+     * Store the name of the message property with which a client identifies itself,
+     * a client without it gets the lane of its reply destination
+     */
+    private static final String CLIENT_ID_PROPERTY = "clientID";
+
+    /**
+     * Store how many admitted quotes are in the scatter-gather at the same time,
+     * the other admitted quotes wait in the lane of their client
+     */
+    private static final int MAX_QUOTES_DISPATCHED = 100;
+
+    /**
+     * Store how often a request that failed with a JMSException is handled again
+     * and how long the first retry waits in milliseconds
+     */
+    private static final int MAX_REDELIVERIES = 3;
+    private static final long INITIAL_REDELIVERY_BACKOFF_MILLIS = 100;
+
+    /**
+     * Store how long closing the gateway waits for the scheduled retries in milliseconds
+     */
+    private static final long CLOSE_TIMEOUT_MILLIS = 1_000;
+
     /**
      * Declare Consumer and Producer to delegate
      * consumption and production of messages respectively
@@ -29,16 +81,44 @@ public class BrokerInsuranceClientGateway {
     private TreatmentCostsSerializer treatmentCostsSerializer;
 
     /**
-     * Map TreatmentCostsRequest to an ID in order to distinguish which
-     * TreatmentCostsRequest corresponds to a received TreatmentCostsReply
+     * Map the quote ID to the QuoteContext of every quote that is in flight,
+     * a context is released as soon as its reply is sent.
+     * The map is not thread safe, so every access synchronizes on it,
+     * which is also the monitor that is notified when a quote is released.
      */
-    private Map<TreatmentCostsRequest, String> treatmentCostsRequestToCorrelationMap;
-    private Map<TreatmentCostsRequest, Destination> treatmentCostsRequestDestinationMap;
+    private LongObjectHashMap<QuoteContext> quoteIdToQuoteContextMap;
 
+    /**
+     * Declare the AdmissionController that limits the number of quotes in flight
+     */
+    private AdmissionController admissionController;
+
+    /**
+     * Declare the FairQuoteScheduler that shares the scatter-gather between the clients
+     */
+    private FairQuoteScheduler fairQuoteScheduler;
 
     /**
-     * Constructor that initializes the consumer, producer, treatmentCostsRequestToCorrelationMap,
-     * treatmentCostsSerializer and sets a consumer message listener
+     * Declare the QuotePriorityClassifier that finds the priority class of a request
+     * and the QuoteSloMonitor that keeps track of the latency of every class
+     */
+    private QuotePriorityClassifier quotePriorityClassifier;
+    private QuoteSloMonitor quoteSloMonitor;
+
+    /**
+     * Declare the DeadLetterChannel that retries the requests that failed
+     * and forwards the malformed ones to the dead-letter queue
+     */
+    private DeadLetterChannel deadLetterChannel;
+
+    /**
+     * Declare the generator of quote IDs
+     */
+    private AtomicLong quoteIdGenerator;
+
+    /**
+     * Constructor that initializes the consumer, producer, quoteIdToQuoteContextMap,
+     * treatmentCostsSerializer, deadLetterChannel and sets a consumer message listener
      *
      * @param producerQueueName the queue name for initializing the producer
      * @param consumerQueueName the queue name for initializing the consumer
@@ -49,55 +129,332 @@ public class BrokerInsuranceClientGateway {
         this.consumer = new Consumer(consumerQueueName);
         this.producer = new Producer();
         this.treatmentCostsSerializer = new TreatmentCostsSerializer();
-        this.treatmentCostsRequestToCorrelationMap = new HashMap<>();
-        this.treatmentCostsRequestDestinationMap = new HashMap<>();
+        this.quoteIdToQuoteContextMap = new LongObjectHashMap<>();
+        this.quoteIdGenerator = new AtomicLong();
+        this.deadLetterChannel = new DeadLetterChannel(
+                consumerQueueName + DeadLetterChannel.DEAD_LETTER_QUEUE_SUFFIX,
+                MAX_REDELIVERIES,
+                INITIAL_REDELIVERY_BACKOFF_MILLIS);
+        this.admissionController = new AdmissionController(MAX_QUOTES_IN_FLIGHT, MAX_QUOTES_IN_FLIGHT_PER_DESTINATION);
+        Map<String, QuotePriority> treatmentCodePrefixToPriorityMap = new HashMap<>();
+        for (String prefix : URGENT_TREATMENT_CODE_PREFIXES) {
+            treatmentCodePrefixToPriorityMap.put(prefix, QuotePriority.URGENT);
+        }
+        this.quotePriorityClassifier = new QuotePriorityClassifier(treatmentCodePrefixToPriorityMap);
+        Map<QuotePriority, Long> priorityToSloMillisMap = new EnumMap<>(QuotePriority.class);
+        priorityToSloMillisMap.put(QuotePriority.URGENT, URGENT_QUOTE_TIMEOUT_MILLIS);
+        priorityToSloMillisMap.put(QuotePriority.NORMAL, QUOTE_TIMEOUT_MILLIS);
+        priorityToSloMillisMap.put(QuotePriority.BULK, QUOTE_TIMEOUT_MILLIS);
+        this.quoteSloMonitor = new QuoteSloMonitor(priorityToSloMillisMap);
+        this.fairQuoteScheduler = new FairQuoteScheduler(MAX_QUOTES_DISPATCHED) {
+            public void onQuoteDispatched(QuoteContext quoteContext) {
+                // a quote that was released while it was being dispatched is not pushed
+                if (getQuoteContext(quoteContext.getQuoteId()) == null) return;
+                // push the QuoteContext whose turn it is
+                onTreatmentCostsRequestArrived(quoteContext);
+            }
+        };
 
         /*
-          Event listener that receives the JMS message, deserializes the body to TreatmentCostsReply,
-          finds corresponding TreatmentCostsRequest and pushes both to parent class through a callback
+          Event listener that receives the JMS message, deserializes the body to TreatmentCostsRequest,
+          creates the QuoteContext and queues it in the lane of its client, from which
+          the FairQuoteScheduler pushes it to parent class through a callback. A message that is
+          not a TextMessage or not a valid TreatmentCostsRequest goes to the dead-letter queue.
          */
-        this.consumer.setConsumerMessageListener(message -> {
+        this.consumer.setConsumerMessageListener(this.deadLetterChannel.guard(message -> {
             try {
-                // typecast received message to TextMessage
+                // a message of another type is malformed
+                if (!(message instanceof TextMessage)) {
+                    throw new MessageFormatException("Message " + message.getJMSMessageID() + " is no TextMessage.");
+                }
                 TextMessage msg = (TextMessage) message;
                 // get the TreatmentCostsRequest from the message body
                 TreatmentCostsRequest treatmentCostsRequest =
                         this.treatmentCostsSerializer.deserializeTreatmentCostsRequestJSON(msg.getText());
-                // map necessary information
-                this.treatmentCostsRequestToCorrelationMap.put(
-                        treatmentCostsRequest,
-                        msg.getJMSMessageID()
-                );
-                this.treatmentCostsRequestDestinationMap.put(treatmentCostsRequest, message.getJMSReplyTo());
-                // push the received TreatmentCostsRequest
-                onTreatmentCostsRequestArrived(treatmentCostsRequest);
-            } catch (JMSException e) { e.printStackTrace(); }
-        });
+                // reply with the correlation ID the client chose, or else with the JMSMessageID
+                String correlationId = msg.getJMSCorrelationID() != null
+                        ? msg.getJMSCorrelationID()
+                        : msg.getJMSMessageID();
+                // the lane of the client is its client ID, or else its reply destination
+                String clientLane = msg.getStringProperty(CLIENT_ID_PROPERTY) != null
+                        ? msg.getStringProperty(CLIENT_ID_PROPERTY)
+                        : String.valueOf(msg.getJMSReplyTo());
+                // the priority class decides the order of the quote and the JMSPriority of its messages
+                QuotePriority priority = this.quotePriorityClassifier.classify(treatmentCostsRequest);
+                // admit the quote, or reply busy right away when too many quotes are in flight
+                if (REJECT_WHEN_BUSY) {
+                    if (!this.admissionController.tryAdmit(clientLane)) {
+                        sendTreatmentCostsReply(
+                                correlationId,
+                                msg.getJMSReplyTo(),
+                                priority,
+                                TreatmentCostsReply.busy());
+                        return;
+                    }
+                } else {
+                    // no new request is consumed until a quote in flight is answered
+                    this.admissionController.admit(clientLane);
+                }
+                // from here on a failure frees the admitted place again, or it would leak
+                QuoteContext quoteContext = null;
+                boolean queued = false;
+                try {
+                    // create the QuoteContext with all necessary information
+                    long now = System.currentTimeMillis();
+                    quoteContext = new QuoteContext(
+                            this.quoteIdGenerator.incrementAndGet(),
+                            treatmentCostsRequest,
+                            correlationId,
+                            msg.getJMSReplyTo(),
+                            clientLane,
+                            priority,
+                            now,
+                            now + this.quoteSloMonitor.getSloMillis(priority)
+                    );
+                    synchronized (this.quoteIdToQuoteContextMap) {
+                        this.quoteIdToQuoteContextMap.put(quoteContext.getQuoteId(), quoteContext);
+                    }
+                    // queue the QuoteContext until it is its turn
+                    this.fairQuoteScheduler.enqueue(quoteContext);
+                    queued = true;
+                } finally {
+                    // release the registered QuoteContext, or only the admitted place if there is none
+                    if (!queued && (quoteContext == null
+                            || releaseQuoteContext(quoteContext.getQuoteId(), false) == null)) {
+                        this.admissionController.release(clientLane);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+    }
+
+    /**
+     * Method that returns the QuoteContext of a quote that is in flight
+     *
+     * @param quoteId the ID of the quote
+     * @return QuoteContext of the quote, or null if it was already answered
+     */
+    public QuoteContext getQuoteContext(long quoteId) {
+        synchronized (this.quoteIdToQuoteContextMap) {
+            return this.quoteIdToQuoteContextMap.get(quoteId);
+        }
     }
 
     /**
      * Method that prepares the JMS message, sets all necessary field
-     * (JMSCorrelationID) and then sends the message
+     * (JMSCorrelationID), sends the message and releases the QuoteContext
      *
-     * @param treatmentCostsRequest that is being responded to
-     * @param treatmentCostsReply related to the TreatmentCostsRequest
+     * @param quoteId the ID of the quote that is being responded to
+     * @param treatmentCostsReply related to the TreatmentCostsRequest of the quote
      * @throws JMSException if something goes wrong with JMS
      */
-    public void replyOnTreatmentCostsRequest(
-            TreatmentCostsRequest treatmentCostsRequest,
+    public void replyOnTreatmentCostsRequest(long quoteId, TreatmentCostsReply treatmentCostsReply)
+            throws JMSException {
+        // release the QuoteContext, a quote is answered only once
+        QuoteContext quoteContext = releaseQuoteContext(quoteId, true);
+        if (quoteContext == null) return;
+        sendTreatmentCostsReply(
+                quoteContext.getCorrelationId(),
+                quoteContext.getReplyDestination(),
+                quoteContext.getPriority(),
+                treatmentCostsReply);
+    }
+
+    /**
+     * Method that releases the QuoteContext of a quote that cannot be answered with a quote
+     * and tells the insurance client why with a busy or unavailable reply, so that the
+     * client does not wait for a quote that will never come
+     *
+     * @param quoteId the ID of the quote
+     * @param failureReply the busy or unavailable TreatmentCostsReply
+     * @return QuoteContext that was released, or null if it was already answered
+     * @throws JMSException if something goes wrong with JMS
+     */
+    public QuoteContext failQuote(long quoteId, TreatmentCostsReply failureReply) throws JMSException {
+        // release the QuoteContext first, a quote is answered only once
+        QuoteContext quoteContext = releaseQuoteContext(quoteId, false);
+        if (quoteContext == null) return null;
+        sendTreatmentCostsReply(
+                quoteContext.getCorrelationId(),
+                quoteContext.getReplyDestination(),
+                quoteContext.getPriority(),
+                failureReply);
+        return quoteContext;
+    }
+
+    /**
+     * Method that serializes a TreatmentCostsReply and sends it with the given
+     * JMSCorrelationID and the JMSPriority of the priority class to the given destination
+     *
+     * @param correlationId the JMSCorrelationID of the reply
+     * @param replyDestination where the reply is sent to
+     * @param priority the priority class of the quote
+     * @param treatmentCostsReply the reply to send
+     * @throws JMSException if something goes wrong with JMS
+     */
+    private void sendTreatmentCostsReply(
+            String correlationId,
+            Destination replyDestination,
+            QuotePriority priority,
             TreatmentCostsReply treatmentCostsReply
     ) throws JMSException {
         // serialize to JSON string the TreatmentCostsReply
         String treatmentCostsReplyJSON = this.treatmentCostsSerializer.serializeTreatmentCostsReply(treatmentCostsReply);
         // create the message
         Message message = this.producer.createMessage(treatmentCostsReplyJSON);
-        // get necessary information from maps
-        String correlationId = this.treatmentCostsRequestToCorrelationMap.get(treatmentCostsRequest);
-        Destination returnDestination = this.treatmentCostsRequestDestinationMap.get(treatmentCostsRequest);
         // include necessary information in message
         message.setJMSCorrelationID(correlationId);
         // sendMessage the message
-        this.producer.sendMessage(message, returnDestination);
+        this.producer.sendMessage(message, replyDestination, priority.getJMSPriority());
+    }
+
+    /**
+     * Method that releases the QuoteContext of a quote that cannot be answered
+     *
+     * @param quoteId the ID of the quote
+     * @return QuoteContext that was released, or null if it was already answered
+     */
+    public QuoteContext releaseQuoteContext(long quoteId) {
+        return releaseQuoteContext(quoteId, false);
+    }
+
+    /**
+     * Method that releases the QuoteContext of a quote and records its latency. A quote that
+     * is still queued is removed from its lane, so it is never dispatched, and only a
+     * dispatched quote frees its place in the FairQuoteScheduler.
+     *
+     * @param quoteId the ID of the quote
+     * @param answered true if the quote is answered, false if it is released without reply
+     * @return QuoteContext that was released, or null if it was already answered
+     */
+    private QuoteContext releaseQuoteContext(long quoteId, boolean answered) {
+        QuoteContext quoteContext;
+        synchronized (this.quoteIdToQuoteContextMap) {
+            quoteContext = this.quoteIdToQuoteContextMap.remove(quoteId);
+            if (quoteContext != null) this.quoteIdToQuoteContextMap.notifyAll();
+        }
+        // free the place of the quote for a new one
+        if (quoteContext != null) {
+            long latencyMillis = System.currentTimeMillis() - quoteContext.getReceivedAt();
+            this.admissionController.release(quoteContext.getClientLane());
+            if (!this.fairQuoteScheduler.remove(quoteContext)) {
+                this.fairQuoteScheduler.quoteCompleted(quoteContext.getClientLane(), latencyMillis);
+            }
+            this.quoteSloMonitor.quoteCompleted(quoteContext.getPriority(), latencyMillis, answered);
+        }
+        return quoteContext;
+    }
+
+    /**
+     * Method that stops consuming TreatmentCostsRequests, the requests that were not
+     * consumed yet stay in the queue for the other broker instances
+     */
+    public void stopConsuming() {
+        this.consumer.close();
+    }
+
+    /**
+     * Method that waits until every quote in flight is answered or released
+     *
+     * @param timeoutMillis how long to wait at most in milliseconds
+     * @return true if no quote is in flight anymore, false if the time ran out
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean awaitQuotesCompleted(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (this.quoteIdToQuoteContextMap) {
+            while (!this.quoteIdToQuoteContextMap.isEmpty()) {
+                long remainingMillis = deadline - System.currentTimeMillis();
+                if (remainingMillis <= 0) return false;
+                this.quoteIdToQuoteContextMap.wait(remainingMillis);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Method that answers every quote that is still in flight with a busy reply,
+     * so that the insurance clients can send the request again to another broker instance.
+     * A quote that is still queued is removed from its lane and never dispatched.
+     *
+     * @return the number of quotes that got a busy reply
+     */
+    public int rejectQuotesInFlight() {
+        List<QuoteContext> quoteContexts;
+        synchronized (this.quoteIdToQuoteContextMap) {
+            quoteContexts = this.quoteIdToQuoteContextMap.values();
+        }
+        int rejected = 0;
+        for (QuoteContext quoteContext : quoteContexts) {
+            try {
+                if (failQuote(quoteContext.getQuoteId(), TreatmentCostsReply.busy()) != null) rejected++;
+            } catch (JMSException e) {
+                e.printStackTrace();
+            }
+        }
+        return rejected;
+    }
+
+    /**
+     * Method that returns the number of quotes in flight
+     *
+     * @return the number of quotes that are not answered or released yet
+     */
+    public int getQuotesInFlight() {
+        synchronized (this.quoteIdToQuoteContextMap) {
+            return this.quoteIdToQuoteContextMap.size();
+        }
+    }
+
+    /**
+     * Method that closes the JMS resources of the gateway, the consumer
+     * has to be stopped before
+     */
+    public void close() {
+        this.deadLetterChannel.close(CLOSE_TIMEOUT_MILLIS);
+        this.producer.close();
+    }
+
+    /**
+     * Method that sets the weight of the lane of a client, a client with weight 2
+     * gets twice as many quotes into the scatter-gather as a busy client with weight 1
+     *
+     * @param clientLane the client ID, or the reply destination of a client without one
+     * @param weight the weight, larger than 0
+     */
+    public void setClientWeight(String clientLane, double weight) {
+        this.fairQuoteScheduler.setLaneWeight(clientLane, weight);
+    }
+
+    /**
+     * Method that returns the FairQuoteScheduler, e.g. for reading the metrics of the client lanes
+     *
+     * @return FairQuoteScheduler of the gateway
+     */
+    public FairQuoteScheduler getFairQuoteScheduler() {
+        return this.fairQuoteScheduler;
+    }
+
+    /**
+     * Method that returns the QuoteSloMonitor, e.g. for reading the latency and SLO attainment
+     * of every priority class
+     *
+     * @return QuoteSloMonitor of the gateway
+     */
+    public QuoteSloMonitor getQuoteSloMonitor() {
+        return this.quoteSloMonitor;
+    }
+
+    /**
+     * Method that returns the DeadLetterChannel, e.g. for reading
+     * how many requests were retried, malformed or dead-lettered
+     *
+     * @return DeadLetterChannel of the gateway
+     */
+    public DeadLetterChannel getDeadLetterChannel() {
+        return this.deadLetterChannel;
     }
 
     /**
@@ -105,7 +462,7 @@ public class BrokerInsuranceClientGateway {
      * an instance of this class to be able to handle the
      * received TreatmentCostsRequest
      *
-     * @param treatmentCostsRequest the received TreatmentCostsRequest
+     * @param quoteContext the QuoteContext of the received TreatmentCostsRequest
      */
-    public void onTreatmentCostsRequestArrived(TreatmentCostsRequest treatmentCostsRequest) {}
+    public void onTreatmentCostsRequestArrived(QuoteContext quoteContext) {}
 }
@@ -0,0 +1,344 @@
+package broker.gateway;
+
+import model.client.QuotePriority;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A class responsible for sharing the scatter-gather fairly between insurance clients.
+ * Every admitted quote is queued in the lane of its client and a limited number of quotes
+ * is dispatched at the same time, so a client that sends a burst only fills its own lane.
+ * The lanes are drained with weighted fair queuing: a quote gets a finish tag of
+ * max(virtual time, finish tag of the previous quote of its lane) + 1 / weight of its lane
+ * and the queued quote with the lowest finish tag is dispatched first.
+ * Every priority class has its own queue in every lane: a quote is only dispatched when
+ * no quote of a higher class is queued, and URGENT quotes are not held back by the
+ * limit on dispatched quotes, so they never wait behind bulk traffic.
+ */
+public class FairQuoteScheduler {
+
+    /**
+     * Store the weight of a lane that has no weight of its own
+     */
+    private static final double DEFAULT_LANE_WEIGHT = 1;
+
+    /**
+     * Store how many lanes are kept before idle lanes and their metrics are removed
+     */
+    private static final int MAX_LANES = 256;
+
+    /**
+     * Store the maximum number of quotes that are dispatched and not yet completed
+     */
+    private final int maxDispatched;
+
+    /**
+     * Map the name of the lane to the lane and to its weight,
+     * a weight is kept even if its lane is removed
+     */
+    private Map<String, Lane> laneNameToLaneMap;
+    private Map<String, Double> laneNameToWeightMap;
+
+    /**
+     * Store per priority class the virtual time, which is the finish tag of the last
+     * dispatched quote of the class, and the number of queued quotes, indexed by ordinal
+     */
+    private double[] virtualTimes;
+    private int[] queued;
+
+    /**
+     * Store the number of dispatched quotes that are not yet completed
+     */
+    private int dispatched;
+
+    /**
+     * Declare the thread that dispatches the queued quotes
+     */
+    private Thread dispatcher;
+
+    /**
+     * Constructor that initializes the lanes and starts the dispatcher
+     *
+     * @param maxDispatched the maximum number of quotes that are dispatched and not yet completed
+     */
+    public FairQuoteScheduler(int maxDispatched) {
+        this.maxDispatched = maxDispatched;
+        this.laneNameToLaneMap = new HashMap<>();
+        this.laneNameToWeightMap = new HashMap<>();
+        this.virtualTimes = new double[QuotePriority.values().length];
+        this.queued = new int[QuotePriority.values().length];
+        this.dispatcher = new Thread(this::dispatchQuotes, "fair-quote-scheduler");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Method that queues a quote in the lane of its client
+     *
+     * @param quoteContext the QuoteContext of the quote, its client lane decides the lane
+     *                     and its priority class the queue within the lane
+     */
+    public synchronized void enqueue(QuoteContext quoteContext) {
+        Lane lane = getLane(quoteContext.getClientLane());
+        int priorityClass = quoteContext.getPriority().ordinal();
+        double finishTag = Math.max(this.virtualTimes[priorityClass], lane.lastFinishTags[priorityClass])
+                + 1 / lane.weight;
+        lane.lastFinishTags[priorityClass] = finishTag;
+        lane.queuedQuotes[priorityClass].add(new QueuedQuote(quoteContext, finishTag, System.currentTimeMillis()));
+        this.queued[priorityClass]++;
+        notifyAll();
+    }
+
+    /**
+     * Method that removes a quote from its lane before it is dispatched,
+     * e.g. when it is released without being answered
+     *
+     * @param quoteContext the QuoteContext of the quote
+     * @return true if the quote was still queued, false if it was already dispatched
+     */
+    public synchronized boolean remove(QuoteContext quoteContext) {
+        Lane lane = this.laneNameToLaneMap.get(quoteContext.getClientLane());
+        if (lane == null) return false;
+        int priorityClass = quoteContext.getPriority().ordinal();
+        Iterator<QueuedQuote> iterator = lane.queuedQuotes[priorityClass].iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().quoteContext == quoteContext) {
+                iterator.remove();
+                this.queued[priorityClass]--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method that frees the place of a dispatched quote that was answered or released
+     * and records how long the quote took since it arrived. A quote that was never
+     * dispatched is removed from its lane instead.
+     *
+     * @param laneName the lane of the quote
+     * @param latencyMillis the time between the arrival of the request and its reply in milliseconds
+     */
+    public synchronized void quoteCompleted(String laneName, long latencyMillis) {
+        Lane lane = this.laneNameToLaneMap.get(laneName);
+        if (lane == null || lane.inFlight == 0) return;
+        lane.inFlight--;
+        lane.averageLatency.record(latencyMillis);
+        this.dispatched--;
+        notifyAll();
+    }
+
+    /**
+     * Method that sets the weight of a lane, a lane with weight 2 gets
+     * twice as many quotes dispatched as a busy lane with weight 1
+     *
+     * @param laneName the lane to set the weight of
+     * @param weight the weight, larger than 0
+     * @throws IllegalArgumentException if the weight is not larger than 0
+     */
+    public synchronized void setLaneWeight(String laneName, double weight) throws IllegalArgumentException {
+        if (!(weight > 0)) {
+            throw new IllegalArgumentException("The weight of a lane has to be larger than 0.");
+        }
+        this.laneNameToWeightMap.put(laneName, weight);
+        Lane lane = this.laneNameToLaneMap.get(laneName);
+        if (lane != null) lane.weight = weight;
+    }
+
+    /**
+     * Method that returns the names of the lanes that are kept
+     *
+     * @return the sorted names of the lanes
+     */
+    public synchronized Set<String> getLaneNames() {
+        return new TreeSet<>(this.laneNameToLaneMap.keySet());
+    }
+
+    /**
+     * Method that returns the number of quotes that are queued in a lane
+     *
+     * @param laneName the lane
+     * @return the number of queued quotes
+     */
+    public synchronized int getQueuedQuotes(String laneName) {
+        Lane lane = this.laneNameToLaneMap.get(laneName);
+        return lane == null ? 0 : lane.getQueuedQuotes();
+    }
+
+    /**
+     * Method that returns the number of dispatched quotes of a lane that are not yet completed
+     *
+     * @param laneName the lane
+     * @return the number of quotes in flight
+     */
+    public synchronized int getInFlight(String laneName) {
+        Lane lane = this.laneNameToLaneMap.get(laneName);
+        return lane == null ? 0 : lane.inFlight;
+    }
+
+    /**
+     * Method that returns the moving average time the quotes of a lane were queued
+     *
+     * @param laneName the lane
+     * @return the average queue wait in milliseconds
+     */
+    public synchronized double getAverageQueueWait(String laneName) {
+        Lane lane = this.laneNameToLaneMap.get(laneName);
+        return lane == null ? 0 : lane.averageQueueWait.get();
+    }
+
+    /**
+     * Method that returns the moving average time between the arrival
+     * of a request of a lane and its reply
+     *
+     * @param laneName the lane
+     * @return the average latency in milliseconds
+     */
+    public synchronized double getAverageLatency(String laneName) {
+        Lane lane = this.laneNameToLaneMap.get(laneName);
+        return lane == null ? 0 : lane.averageLatency.get();
+    }
+
+    /**
+     * Method that runs on the dispatcher thread and dispatches the queued quote of the highest
+     * priority class with the lowest finish tag as soon as fewer than the maximum number
+     * of quotes are dispatched, or right away if it is URGENT
+     */
+    private void dispatchQuotes() {
+        while (true) {
+            QuoteContext quoteContext;
+            synchronized (this) {
+                try {
+                    while ((quoteContext = pollNextQuote()) == null) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            // dispatch outside the lock, the callback sends the hospital requests
+            try {
+                onQuoteDispatched(quoteContext);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Method that removes the queued quote that is next in line and marks it as dispatched,
+     * has to be called while holding the lock
+     *
+     * @return QuoteContext of the quote to dispatch, or null if no quote may be dispatched now
+     */
+    private QuoteContext pollNextQuote() {
+        // find the highest priority class with a queued quote
+        int priorityClass = 0;
+        while (priorityClass < this.queued.length && this.queued[priorityClass] == 0) priorityClass++;
+        if (priorityClass == this.queued.length) return null;
+        if (priorityClass != QuotePriority.URGENT.ordinal() && this.dispatched >= this.maxDispatched) return null;
+        // find the lane with the lowest finish tag in that class
+        Lane nextLane = null;
+        for (Lane lane : this.laneNameToLaneMap.values()) {
+            QueuedQuote head = lane.queuedQuotes[priorityClass].peek();
+            if (head == null) continue;
+            if (nextLane == null || head.finishTag < nextLane.queuedQuotes[priorityClass].peek().finishTag) {
+                nextLane = lane;
+            }
+        }
+        QueuedQuote queuedQuote = nextLane.queuedQuotes[priorityClass].poll();
+        this.virtualTimes[priorityClass] = queuedQuote.finishTag;
+        this.queued[priorityClass]--;
+        this.dispatched++;
+        nextLane.inFlight++;
+        nextLane.averageQueueWait.record(System.currentTimeMillis() - queuedQuote.enqueuedAt);
+        return queuedQuote.quoteContext;
+    }
+
+    /**
+     * Method that returns a lane, creating it the first time the lane is seen
+     * and removing idle lanes when there are too many
+     *
+     * @param laneName the name of the lane
+     * @return Lane with the name
+     */
+    private Lane getLane(String laneName) {
+        Lane lane = this.laneNameToLaneMap.get(laneName);
+        if (lane != null) return lane;
+        if (this.laneNameToLaneMap.size() >= MAX_LANES) {
+            removeIdleLanes();
+        }
+        lane = new Lane(this.laneNameToWeightMap.getOrDefault(laneName, DEFAULT_LANE_WEIGHT));
+        this.laneNameToLaneMap.put(laneName, lane);
+        return lane;
+    }
+
+    /**
+     * Method that removes every lane without queued or dispatched quotes
+     */
+    private void removeIdleLanes() {
+        Iterator<Lane> iterator = this.laneNameToLaneMap.values().iterator();
+        while (iterator.hasNext()) {
+            Lane lane = iterator.next();
+            if (lane.getQueuedQuotes() == 0 && lane.inFlight == 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Callback that needs to be implemented when creating an instance of this class
+     * that pushes the quote that is next in line for the scatter-gather
+     *
+     * @param quoteContext the QuoteContext of the dispatched quote
+     */
+    public void onQuoteDispatched(QuoteContext quoteContext) {}
+
+    /**
+     * The queued quotes per priority class, weight and metrics of a single client lane
+     */
+    private static class Lane {
+        private final ArrayDeque<QueuedQuote>[] queuedQuotes;
+        private final double[] lastFinishTags;
+        private double weight;
+        private int inFlight;
+        private final MovingAverage averageQueueWait = new MovingAverage();
+        private final MovingAverage averageLatency = new MovingAverage();
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Lane(double weight) {
+            this.weight = weight;
+            this.queuedQuotes = new ArrayDeque[QuotePriority.values().length];
+            for (int priorityClass = 0; priorityClass < this.queuedQuotes.length; priorityClass++) {
+                this.queuedQuotes[priorityClass] = new ArrayDeque<>();
+            }
+            this.lastFinishTags = new double[QuotePriority.values().length];
+        }
+
+        private int getQueuedQuotes() {
+            int queuedQuotes = 0;
+            for (ArrayDeque<QueuedQuote> priorityQueue : this.queuedQuotes) queuedQuotes += priorityQueue.size();
+            return queuedQuotes;
+        }
+    }
+
+    /**
+     * A quote that is waiting in its lane to be dispatched
+     */
+    private static class QueuedQuote {
+        private final QuoteContext quoteContext;
+        private final double finishTag;
+        private final long enqueuedAt;
+
+        private QueuedQuote(QuoteContext quoteContext, double finishTag, long enqueuedAt) {
+            this.quoteContext = quoteContext;
+            this.finishTag = finishTag;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package broker.gateway;
+
+/**
+ * A class responsible for limiting how many hedged requests are sent,
+ * so hedging only adds a small percentage of extra load on the hospitals
+ */
+public class HedgeBudget {
+
+    /**
+     * Store the fraction of hedged requests allowed per sent request
+     * and the maximum number of hedges that can be saved up for a burst
+     */
+    private final double hedgeRatio;
+    private final double maxTokens;
+
+    /**
+     * Store the number of hedges that can currently be sent
+     */
+    private double tokens;
+
+    /**
+     * Constructor that sets the ratio and the burst size
+     *
+     * @param hedgeRatio fraction of requests that may be hedged, e.g. 0.05 for 5%
+     * @param maxTokens maximum number of hedges that can be sent in a burst
+     */
+    public HedgeBudget(double hedgeRatio, double maxTokens) {
+        this.hedgeRatio = hedgeRatio;
+        this.maxTokens = maxTokens;
+    }
+
+    /**
+     * Method that earns a fraction of a hedge for every request sent
+     */
+    public synchronized void requestSent() {
+        this.tokens = Math.min(this.maxTokens, this.tokens + this.hedgeRatio);
+    }
+
+    /**
+     * Method that spends a hedge if there is one left
+     *
+     * @return true if a hedged request may be sent, otherwise false
+     */
+    public synchronized boolean tryAcquire() {
+        if (this.tokens < 1) return false;
+        this.tokens--;
+        return true;
+    }
+}
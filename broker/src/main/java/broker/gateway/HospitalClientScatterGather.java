@@ -1,11 +1,18 @@
 package broker.gateway;
 
-import broker.model.hospital.HospitalCostsReply;
-import broker.model.hospital.HospitalCostsRequest;
+import broker.util.LongObjectHashMap;
+import model.client.QuotePriority;
+import model.hospital.HospitalCostsReply;
+import model.hospital.HospitalCostsRequest;
 
 import javax.jms.JMSException;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 /**
  * Class responsible for delegating scattering of HospitalCostsRequest
@@ -13,6 +20,52 @@ import java.util.Map;
  */
 public class HospitalClientScatterGather {
 
+    /**
+     * Store the logger of the scatter-gather
+     */
+    private static final Logger LOGGER = Logger.getLogger(HospitalClientScatterGather.class.getName());
+
+    /**
+     * Store whether hospitals that are degraded or backlogged are skipped
+     */
+    private static final boolean ADAPTIVE_ROUTING = true;
+
+    /**
+     * Store the name of the file with the hospitals and their routing rules
+     */
+    private static final String HOSPITAL_REGISTRY_FILE_NAME = "hospitals.json";
+
+    /**
+     * Store whether requests for the same hospital are grouped into batch messages
+     */
+    private static final boolean BATCHING_ENABLED = false;
+
+    /**
+     * Store whether the hospitals reply to a temporary queue of this broker instance
+     * instead of the shared consumer queue. The aggregations live in this instance,
+     * so with their own reply queue several broker instances can consume the same
+     * insurance client queue without receiving each other's hospital replies.
+     */
+    private static final boolean INSTANCE_REPLY_QUEUE_ENABLED = true;
+
+    /**
+     * Store the hedging settings: whether slow hospitals get a hedged request,
+     * after which latency percentile it is sent and how much extra load hedging
+     * is allowed to add. Only a hospital with a replica queue in the registry
+     * is hedged, a hospital without a replica has nothing to race against.
+     */
+    private static final boolean HEDGING_ENABLED = true;
+    private static final double HEDGE_LATENCY_PERCENTILE = 0.95;
+    private static final double HEDGE_BUDGET_RATIO = 0.05;
+    private static final double HEDGE_BUDGET_MAX_BURST = 10;
+
+    /**
+     * Store how long the ID of an ended aggregation is remembered in milliseconds. A reply
+     * to an aggregation that completed or expired within that time, e.g. the loser of a hedged
+     * request, is late and dropped instead of forwarded to the dead-letter queue as orphaned.
+     */
+    private static final long ENDED_AGGREGATION_RETENTION_MILLIS = 60_000;
+
     /**
      * Declare the BrokerHospitalClientGateway
      */
@@ -25,75 +78,318 @@ public class HospitalClientScatterGather {
     private HospitalReplyAggregator hospitalReplyAggregator;
 
     /**
-     * Declare and integer that serves as aggregationId generator
-     * by incrementing every time a new aggregation is created
+     * Map aggregationId to the PendingAggregation that holds the HospitalCostsRequest,
+     * needed for sending hedged requests, and the hospitals that already replied
      */
-    private int aggregationIdGenerator;
+    private LongObjectHashMap<PendingAggregation> aggregationIdToPendingAggregationMap;
 
     /**
-     * Declare mapping for mapping aggregationId to BankInterestRequest
+     * Store the IDs of the aggregations that ended in the current and in the previous
+     * retention period and the number of late replies to them, guarded by the lock of the
+     * aggregationIdToPendingAggregationMap. The periods are swapped at the end of every
+     * period, so an ID is remembered for one to two periods without a task per aggregation.
      */
-    private Map<Integer, HospitalCostsRequest> aggregationIdToHospitalCostsRequestMap;
+    private LongObjectHashMap<Boolean> endedAggregationIds;
+    private LongObjectHashMap<Boolean> previouslyEndedAggregationIds;
+    private long lateReplies;
+
+    /**
+     * Declare the scheduler that sends hedged requests and expires aggregations
+     * at their deadline, and the budget that limits the hedged requests
+     */
+    private ScheduledExecutorService scheduler;
+    private HedgeBudget hedgeBudget;
+
+    /**
+     * Map the replica queue a hedged request was sent to to the queue of its hospital
+     */
+    private Map<String, String> replicaToHospitalQueueMap;
 
     /**
      * Constructor that initializes all properties and implements all callbacks
+     *
+     * @param consumerQueueName the shared queue the hospitals reply to
+     *                          when this instance has no reply queue of its own
+     * @throws JMSException if something goes wrong with JMS
      */
     public HospitalClientScatterGather(String consumerQueueName) throws JMSException {
-        // initialize aggregationIdGenerator and mapping
-        this.aggregationIdGenerator = 0;
-        this.aggregationIdToHospitalCostsRequestMap = new HashMap<>();
-        // initialize BrokerHospitalClientGateway and implement callback
-        this.brokerHospitalClientGateway = new BrokerHospitalClientGateway(consumerQueueName) {
+        // initialize mappings
+        this.aggregationIdToPendingAggregationMap = new LongObjectHashMap<>();
+        this.endedAggregationIds = new LongObjectHashMap<>();
+        this.previouslyEndedAggregationIds = new LongObjectHashMap<>();
+        // initialize hedging
+        this.hedgeBudget = new HedgeBudget(HEDGE_BUDGET_RATIO, HEDGE_BUDGET_MAX_BURST);
+        this.replicaToHospitalQueueMap = new ConcurrentHashMap<>();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hospital-scatter-gather-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleAtFixedRate(
+                this::rotateEndedAggregationIds,
+                ENDED_AGGREGATION_RETENTION_MILLIS,
+                ENDED_AGGREGATION_RETENTION_MILLIS,
+                TimeUnit.MILLISECONDS);
+        // initialize BrokerHospitalClientGateway on the reply queue and implement callback
+        Consumer hospitalReplyConsumer = INSTANCE_REPLY_QUEUE_ENABLED
+                ? new Consumer()
+                : new Consumer(consumerQueueName);
+        this.brokerHospitalClientGateway = new BrokerHospitalClientGateway(
+                hospitalReplyConsumer,
+                consumerQueueName + DeadLetterChannel.DEAD_LETTER_QUEUE_SUFFIX,
+                BATCHING_ENABLED) {
             public void onHospitalCostsReplyReceived(
-                    HospitalCostsRequest hospitalCostsRequest,
                     HospitalCostsReply hospitalCostsReply,
-                    Integer aggregationId
+                    long aggregationId,
+                    String correlationId,
+                    String hospitalQueueName
             ) {
-                if (!aggregationIdToHospitalCostsRequestMap.containsKey(aggregationId)) {
-                    aggregationIdToHospitalCostsRequestMap.put(aggregationId, hospitalCostsRequest);
+                // a late reply is dropped, a reply of an unknown aggregation goes to the dead-letter queue
+                if (!checkPending(aggregationId, hospitalQueueName)) return;
+                // a hedged reply whose request is no longer known counts for the primary hospital,
+                // the aggregator drops the reply if the hospital already replied
+                if (hospitalQueueName != null && replicaToHospitalQueueMap.containsKey(hospitalQueueName)) {
+                    hospitalQueueName = replicaToHospitalQueueMap.get(hospitalQueueName);
                 }
-                hospitalReplyAggregator.newHospitalCostsReplyReceived(hospitalCostsReply, aggregationId);
+                hospitalReplyAggregator.newHospitalCostsReplyReceived(
+                        hospitalCostsReply, aggregationId, correlationId, hospitalQueueName);
             }
         };
-        // initialize HospitalReplyAggregator
-        this.hospitalReplyAggregator = new HospitalReplyAggregator() {
+        // initialize HospitalReplyAggregator that selects the hospital with the lowest price
+        this.hospitalReplyAggregator = new HospitalReplyAggregator(new MinPriceSelectionStrategy()) {
             public void onAllHospitalCostsRepliesReceived(
-                    HospitalCostsReply hospitalCostsReply, Integer aggregationId) {
-                onHospitalCostsReplyReceived(
-                        aggregationIdToHospitalCostsRequestMap.get(aggregationId),
-                        hospitalCostsReply
-                );
+                    HospitalCostsReply hospitalCostsReply, long aggregationId) {
+                // release the administration of the aggregation
+                removePendingAggregation(aggregationId);
+                onHospitalCostsReplyReceived(aggregationId, hospitalCostsReply);
             }
         };
         // initialize HospitalRecipientList
-        this.hospitalRecipientList = new HospitalRecipientList(this.brokerHospitalClientGateway);
+        this.hospitalRecipientList = new HospitalRecipientList(
+                this.brokerHospitalClientGateway,
+                new HospitalRegistry(HOSPITAL_REGISTRY_FILE_NAME),
+                ADAPTIVE_ROUTING);
     }
 
     /**
      * Method that creates a new aggregation in the HospitalReplyAggregation
-     * after sending the HospitalCostsRequest via the HospitalRecipientList
+     * before sending the HospitalCostsRequest via the HospitalRecipientList
+     * and schedules hedged requests for the hospitals that reply slowly. If not all
+     * hospitals have replied by the deadline, the best reply so far is pushed.
      *
      * @param hospitalCostsRequest to be sent
+     * @param aggregationId the identifier of the aggregation, e.g. the quote ID
+     * @param deadline the time in milliseconds at which the aggregation expires
+     * @param priority the priority class of the quote, every hospital request gets its JMSPriority
      * @throws JMSException if something goes wrong with JMS
      */
-    public void requestApproximation(HospitalCostsRequest hospitalCostsRequest) throws JMSException {
-        // send HospitalCostsRequest and store the number of hospitals to which the request was sent
-        int sentCount = this.hospitalRecipientList.sendHospitalCostsRequest(
-                hospitalCostsRequest, this.aggregationIdGenerator);
-        // create the aggregation
-        this.hospitalReplyAggregator.createAggregation(this.aggregationIdGenerator, sentCount);
-        // increment the generator
-        this.aggregationIdGenerator++;
+    public void requestApproximation(
+            HospitalCostsRequest hospitalCostsRequest,
+            long aggregationId,
+            long deadline,
+            QuotePriority priority
+    ) throws JMSException {
+        // find the hospitals the request is sent to
+        List<String> hospitalQueueNames = this.hospitalRecipientList.findHospitalQueueNames(hospitalCostsRequest);
+        // no hospital accepts the request, so no reply will ever arrive
+        if (hospitalQueueNames.isEmpty()) {
+            LOGGER.warning("No hospital in the registry accepts " + hospitalCostsRequest);
+            onHospitalCostsReplyReceived(aggregationId, null);
+            return;
+        }
+        // map the aggregationId and create the aggregation before sending, replies can arrive right away
+        synchronized (this.aggregationIdToPendingAggregationMap) {
+            this.aggregationIdToPendingAggregationMap.put(
+                    aggregationId, new PendingAggregation(hospitalCostsRequest, priority));
+        }
+        this.hospitalReplyAggregator.createAggregation(aggregationId, hospitalQueueNames.size());
+        try {
+            this.hospitalRecipientList.sendHospitalCostsRequest(
+                    hospitalCostsRequest, aggregationId, hospitalQueueNames, priority);
+        } catch (JMSException e) {
+            removePendingAggregation(aggregationId);
+            this.hospitalReplyAggregator.removeAggregation(aggregationId);
+            throw e;
+        }
+        // expire the aggregation at its deadline
+        this.scheduler.schedule(
+                () -> this.hospitalReplyAggregator.expireAggregation(aggregationId),
+                Math.max(0, deadline - System.currentTimeMillis()),
+                TimeUnit.MILLISECONDS);
+        // schedule a hedged request for every hospital
+        if (HEDGING_ENABLED) {
+            for (String hospitalQueueName : hospitalQueueNames) {
+                scheduleHedgedRequest(aggregationId, hospitalQueueName);
+            }
+        }
+    }
+
+    /**
+     * Method that schedules a hedged request to the replica queue of a hospital
+     * once the observed p95 reply latency of the hospital has passed
+     *
+     * @param aggregationId the identifier of the aggregation
+     * @param hospitalQueueName the queue the original request was sent to
+     */
+    private void scheduleHedgedRequest(long aggregationId, String hospitalQueueName) {
+        this.hedgeBudget.requestSent();
+        // a hospital without a replica is not hedged
+        String replicaQueueName = this.hospitalRecipientList.findReplicaQueueName(hospitalQueueName);
+        if (replicaQueueName == null) return;
+        long hedgeDelay = this.brokerHospitalClientGateway.getHospitalPerformanceMonitor()
+                .getLatencyPercentile(hospitalQueueName, HEDGE_LATENCY_PERCENTILE);
+        // there is no reliable p95 for this hospital yet
+        if (hedgeDelay < 0) return;
+        this.scheduler.schedule(
+                () -> sendHedgedRequest(aggregationId, hospitalQueueName, replicaQueueName),
+                hedgeDelay,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Method that sends the request of an aggregation to the replica queue of a hospital,
+     * if the hospital has not replied yet and the hedge budget allows it
+     *
+     * @param aggregationId the identifier of the aggregation
+     * @param hospitalQueueName the queue the original request was sent to
+     * @param replicaQueueName the queue of the replica of the hospital
+     */
+    private void sendHedgedRequest(long aggregationId, String hospitalQueueName, String replicaQueueName) {
+        PendingAggregation pendingAggregation;
+        synchronized (this.aggregationIdToPendingAggregationMap) {
+            pendingAggregation = this.aggregationIdToPendingAggregationMap.get(aggregationId);
+            if (pendingAggregation == null) return;
+        }
+        if (this.hospitalReplyAggregator.hasReplied(aggregationId, hospitalQueueName)) return;
+        if (!this.hedgeBudget.tryAcquire()) return;
+        this.replicaToHospitalQueueMap.put(replicaQueueName, hospitalQueueName);
+        try {
+            this.brokerHospitalClientGateway.requestApproximation(
+                    pendingAggregation.hospitalCostsRequest,
+                    aggregationId,
+                    replicaQueueName,
+                    hospitalQueueName,
+                    pendingAggregation.priority);
+        } catch (JMSException e) {
+            e.printStackTrace();
+        }
+        // the aggregation ended while the hedged request was sent, release its ID again
+        synchronized (this.aggregationIdToPendingAggregationMap) {
+            if (this.aggregationIdToPendingAggregationMap.containsKey(aggregationId)) return;
+        }
+        this.brokerHospitalClientGateway.releaseAggregation(aggregationId);
+    }
+
+    /**
+     * Method that checks if the aggregation a hospital replied to is pending,
+     * a reply to an aggregation that ended recently is counted as late
+     *
+     * @param aggregationId the identifier of the aggregation
+     * @param hospitalQueueName the queue of the hospital that replied
+     * @return true if the aggregation is pending, false if the reply is late
+     * @throws OrphanedMessageException if the aggregation was never created here or ended long ago
+     */
+    private boolean checkPending(long aggregationId, String hospitalQueueName) throws OrphanedMessageException {
+        synchronized (this.aggregationIdToPendingAggregationMap) {
+            if (this.aggregationIdToPendingAggregationMap.containsKey(aggregationId)) return true;
+            if (this.endedAggregationIds.containsKey(aggregationId)
+                    || this.previouslyEndedAggregationIds.containsKey(aggregationId)) {
+                this.lateReplies++;
+                return false;
+            }
+        }
+        throw new OrphanedMessageException("Aggregation " + aggregationId + " of the reply of "
+                + hospitalQueueName + " is not pending.");
+    }
+
+    /**
+     * Method that releases the administration of an aggregation, also in the
+     * BrokerHospitalClientGateway, and remembers that it ended, so its late replies are recognized
+     *
+     * @param aggregationId the identifier of the aggregation
+     */
+    private void removePendingAggregation(long aggregationId) {
+        synchronized (this.aggregationIdToPendingAggregationMap) {
+            this.aggregationIdToPendingAggregationMap.remove(aggregationId);
+            this.endedAggregationIds.put(aggregationId, Boolean.TRUE);
+        }
+        this.brokerHospitalClientGateway.releaseAggregation(aggregationId);
+    }
+
+    /**
+     * Method that runs on the scheduler at the end of every retention period and forgets
+     * the aggregations that ended in the previous period
+     */
+    private void rotateEndedAggregationIds() {
+        synchronized (this.aggregationIdToPendingAggregationMap) {
+            LongObjectHashMap<Boolean> expiredAggregationIds = this.previouslyEndedAggregationIds;
+            this.previouslyEndedAggregationIds = this.endedAggregationIds;
+            expiredAggregationIds.clear();
+            this.endedAggregationIds = expiredAggregationIds;
+        }
+    }
+
+    /**
+     * Method that stops the hedged requests and the expiry of the aggregations
+     * and closes the BrokerHospitalClientGateway, the aggregations have to be
+     * completed or expired before
+     */
+    public void close() {
+        this.scheduler.shutdownNow();
+        this.brokerHospitalClientGateway.close();
+    }
+
+    /**
+     * Method that returns the number of hospital replies that were dropped
+     * because the hospital already replied to the aggregation
+     *
+     * @return the number of duplicate replies
+     */
+    public long getDuplicateReplies() {
+        return this.hospitalReplyAggregator.getDuplicateReplies();
+    }
+
+    /**
+     * Method that returns the number of hospital replies that were dropped
+     * because their aggregation had already completed or expired
+     *
+     * @return the number of late replies
+     */
+    public long getLateReplies() {
+        synchronized (this.aggregationIdToPendingAggregationMap) {
+            return this.lateReplies;
+        }
+    }
+
+    /**
+     * Method that returns the DeadLetterChannel of the hospital replies, e.g. for reading
+     * how many replies were retried, malformed, orphaned or dead-lettered
+     *
+     * @return DeadLetterChannel of the BrokerHospitalClientGateway
+     */
+    public DeadLetterChannel getDeadLetterChannel() {
+        return this.brokerHospitalClientGateway.getDeadLetterChannel();
     }
 
     /**
      * Callback that needs to be implemented when creating an instance of this class
-     * that pushes the received HospitalCostsReply and corresponding HospitalCostsRequest
+     * that pushes the best HospitalCostsReply of an aggregation
      *
-     * @param hospitalCostsRequest corresponding to HospitalCostsReply
-     * @param hospitalCostsReply received HospitalCostsReply
+     * @param aggregationId the identifier of the aggregation
+     * @param hospitalCostsReply the best HospitalCostsReply, null if no hospital replied in time
      */
-    public void onHospitalCostsReplyReceived(
-            HospitalCostsRequest hospitalCostsRequest,
-            HospitalCostsReply hospitalCostsReply) {}
+    public void onHospitalCostsReplyReceived(long aggregationId, HospitalCostsReply hospitalCostsReply) {}
+
+    /**
+     * The HospitalCostsRequest and priority class of an aggregation that is in flight
+     */
+    private static class PendingAggregation {
+        private final HospitalCostsRequest hospitalCostsRequest;
+        private final QuotePriority priority;
+
+        private PendingAggregation(HospitalCostsRequest hospitalCostsRequest, QuotePriority priority) {
+            this.hospitalCostsRequest = hospitalCostsRequest;
+            this.priority = priority;
+        }
+    }
 }
@@ -1,8 +1,21 @@
 package broker.gateway;
 
-import broker.model.hospital.HospitalCostsReply;
-import broker.model.hospital.HospitalCostsRequest;
 import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import model.hospital.HospitalCostsReply;
+import model.hospital.HospitalCostsReplyBatchItem;
+import model.hospital.HospitalCostsRequest;
+import model.hospital.HospitalCostsRequestBatchItem;
+import model.serialization.ModelSerializer;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A class that is responsible for serializing to a JSON string and
@@ -10,25 +23,48 @@ import com.google.gson.Gson;
  */
 public class HospitalCostsSerializer {
 
+    // Store the types of the batches of HospitalCostsRequests and HospitalCostsReplies
+    private static final Type REQUEST_BATCH_TYPE = new TypeToken<List<HospitalCostsRequestBatchItem>>() {}.getType();
+    private static final Type REPLY_BATCH_TYPE = new TypeToken<List<HospitalCostsReplyBatchItem>>() {}.getType();
+
+    // Store the fixed parts of a serialized HospitalCostsRequest
+    private static final String SSN_FRAGMENT = "{\"ssn\":";
+    private static final String AGE_FRAGMENT = ",\"age\":";
+    private static final String TREATMENT_CODE_FRAGMENT = ",\"treatmentCode\":";
+
+    // Store how many serialized treatment codes are cached at most
+    private static final int MAX_CACHED_TREATMENT_CODES = 1024;
+
     // Declare Gson object that does the (de)serializing
     private Gson serializer;
 
+    // Map the treatment code to its serialized JSON string, there are only a few codes
+    private Map<String, String> treatmentCodeToJsonMap;
+
     /**
-     * Constructor that initializes the Gson object
+     * Constructor that uses the Gson object shared by all gateways,
+     * which (de)serializes the model classes without reflection
      */
     public HospitalCostsSerializer() {
-        this.serializer = new Gson();
+        this.serializer = ModelSerializer.getGson();
+        this.treatmentCodeToJsonMap = new ConcurrentHashMap<>();
     }
 
     /**
-     * Serializes HospitalCostsRequest to a JSON string by using the Gson object
-     * then returns the serialized string
+     * Serializes HospitalCostsRequest to a JSON string from cached fragments,
+     * without going through the Gson object, then returns the serialized string
      *
      * @param hospitalCostsRequest HospitalCostsRequest object to be serialized
      * @return String hospitalCostsRequest serialized to a JSON string
      */
     public String serializeHospitalCostsRequest(HospitalCostsRequest hospitalCostsRequest) {
-        return this.serializer.toJson(hospitalCostsRequest);
+        StringBuilder json = new StringBuilder(64)
+                .append(SSN_FRAGMENT).append(hospitalCostsRequest.getSsn())
+                .append(AGE_FRAGMENT).append(hospitalCostsRequest.getAge());
+        if (hospitalCostsRequest.getTreatmentCode() != null) {
+            json.append(TREATMENT_CODE_FRAGMENT).append(serializeTreatmentCode(hospitalCostsRequest.getTreatmentCode()));
+        }
+        return json.append('}').toString();
     }
 
     /**
@@ -63,4 +99,99 @@ public class HospitalCostsSerializer {
     public HospitalCostsReply deserializeHospitalCostsReplyJSON(String json) {
         return this.serializer.fromJson(json, HospitalCostsReply.class);
     }
+
+    /**
+     * Deserializes a JSON string to a HospitalCostsReply object with only the price and the
+     * hospital name, which is all the broker needs, by streaming over
+     * the JSON string and skipping the address, then returns the deserialized object
+     *
+     * @param json JSON string to be deserialized
+     * @return HospitalCostsReply the deserialized object without address
+     * @throws JsonSyntaxException if the JSON string is not a valid HospitalCostsReply
+     */
+    public HospitalCostsReply deserializeHospitalCostsReplyWithoutAddressJSON(String json) throws JsonSyntaxException {
+        try (JsonReader in = new JsonReader(new StringReader(json))) {
+            double price = 0;
+            String hospitalName = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "price":
+                        price = in.nextDouble();
+                        break;
+                    case "hospitalName":
+                        hospitalName = ModelSerializer.nextString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new HospitalCostsReply(price, hospitalName, null);
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /**
+     * Serializes a batch of HospitalCostsRequests to a JSON string by using the Gson object
+     * then returns the serialized string
+     *
+     * @param batch List of HospitalCostsRequestBatchItems to be serialized
+     * @return String batch serialized to a JSON string
+     */
+    public String serializeHospitalCostsRequestBatch(List<HospitalCostsRequestBatchItem> batch) {
+        return this.serializer.toJson(batch, REQUEST_BATCH_TYPE);
+    }
+
+    /**
+     * Serializes a batch of HospitalCostsReplies to a JSON string by using the Gson object
+     * then returns the serialized string
+     *
+     * @param batch List of HospitalCostsReplyBatchItems to be serialized
+     * @return String batch serialized to a JSON string
+     */
+    public String serializeHospitalCostsReplyBatch(List<HospitalCostsReplyBatchItem> batch) {
+        return this.serializer.toJson(batch, REPLY_BATCH_TYPE);
+    }
+
+    /**
+     * Deserializes a JSON string to a batch of HospitalCostsRequests by using the Gson object,
+     * then returns the deserialized batch
+     *
+     * @param json JSON string to be deserialized
+     * @return List of HospitalCostsRequestBatchItems
+     */
+    public List<HospitalCostsRequestBatchItem> deserializeHospitalCostsRequestBatchJSON(String json) {
+        return this.serializer.fromJson(json, REQUEST_BATCH_TYPE);
+    }
+
+    /**
+     * Deserializes a JSON string to a batch of HospitalCostsReplies by using the Gson object,
+     * then returns the deserialized batch
+     *
+     * @param json JSON string to be deserialized
+     * @return List of HospitalCostsReplyBatchItems
+     */
+    public List<HospitalCostsReplyBatchItem> deserializeHospitalCostsReplyBatchJSON(String json) {
+        return this.serializer.fromJson(json, REPLY_BATCH_TYPE);
+    }
+
+    /**
+     * Returns the treatment code as JSON string, which is cached
+     * because every request for the same treatment repeats it
+     *
+     * @param treatmentCode the treatment code to be serialized
+     * @return String treatmentCode serialized to a JSON string
+     */
+    private String serializeTreatmentCode(String treatmentCode) {
+        String treatmentCodeJSON = this.treatmentCodeToJsonMap.get(treatmentCode);
+        if (treatmentCodeJSON == null) {
+            treatmentCodeJSON = this.serializer.toJson(treatmentCode);
+            if (this.treatmentCodeToJsonMap.size() < MAX_CACHED_TREATMENT_CODES) {
+                this.treatmentCodeToJsonMap.put(treatmentCode, treatmentCodeJSON);
+            }
+        }
+        return treatmentCodeJSON;
+    }
 }
@@ -0,0 +1,214 @@
+package broker.gateway;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A class responsible for keeping track of how every hospital queue
+ * is performing, so that degraded or backlogged hospitals can be skipped
+ */
+public class HospitalPerformanceMonitor {
+
+    /**
+     * Store the thresholds that decide when a hospital is degraded
+     */
+    private static final long REPLY_TIMEOUT_MILLIS = 60_000;
+    private static final double MAX_TIMEOUT_RATE = 0.5;
+    private static final int MAX_OUTSTANDING_REQUESTS = 50;
+
+    /**
+     * Store how often a degraded hospital still gets a request,
+     * so it can prove that it has recovered
+     */
+    private static final long PROBE_INTERVAL_MILLIS = 10_000;
+
+    /**
+     * Store how many recent latencies are needed before a percentile is trusted
+     */
+    private static final int MIN_LATENCY_SAMPLES = 20;
+
+    /**
+     * Map the hospital queue name to its statistics
+     * Map the correlation ID and queue name to the request that is waiting for a reply,
+     * the queue name is part of the key because one message can be sent to several queues
+     */
+    private Map<String, HospitalStatistics> hospitalQueueToStatisticsMap;
+    private Map<String, OutstandingRequest> correlationToOutstandingRequestMap;
+
+    /**
+     * Declare the outstanding requests in the order they were sent, which is also the order
+     * in which they expire, so only the head has to be checked. A request that got its reply
+     * stays in the queue until it reaches the head and is then skipped.
+     */
+    private ArrayDeque<OutstandingRequest> outstandingRequestsBySentAt;
+
+    /**
+     * Constructor that initializes both maps and the queue of outstanding requests
+     */
+    public HospitalPerformanceMonitor() {
+        this.hospitalQueueToStatisticsMap = new HashMap<>();
+        this.correlationToOutstandingRequestMap = new HashMap<>();
+        this.outstandingRequestsBySentAt = new ArrayDeque<>();
+    }
+
+    /**
+     * Method that registers a request that was sent to a hospital queue
+     *
+     * @param hospitalQueueName the queue the request was sent to
+     * @param correlationId the ID the reply is going to be correlated with
+     */
+    public synchronized void requestSent(String hospitalQueueName, String correlationId) {
+        HospitalStatistics statistics = getStatistics(hospitalQueueName);
+        statistics.outstandingRequests++;
+        String key = createKey(hospitalQueueName, correlationId);
+        OutstandingRequest outstandingRequest =
+                new OutstandingRequest(key, hospitalQueueName, System.currentTimeMillis());
+        this.correlationToOutstandingRequestMap.put(key, outstandingRequest);
+        this.outstandingRequestsBySentAt.add(outstandingRequest);
+    }
+
+    /**
+     * Method that registers a received reply and updates the moving
+     * latency and timeout rate of the hospital that sent it
+     *
+     * @param hospitalQueueName the queue the request was consumed from
+     * @param correlationId the ID of the request the reply belongs to
+     */
+    public synchronized void replyReceived(String hospitalQueueName, String correlationId) {
+        OutstandingRequest outstandingRequest =
+                this.correlationToOutstandingRequestMap.remove(createKey(hospitalQueueName, correlationId));
+        // the request already expired and was counted as a timeout
+        if (outstandingRequest == null) return;
+        HospitalStatistics statistics = getStatistics(outstandingRequest.hospitalQueueName);
+        statistics.outstandingRequests--;
+        long latency = System.currentTimeMillis() - outstandingRequest.sentAt;
+        statistics.averageLatency.record(latency);
+        statistics.latencySamples.record(latency);
+        statistics.timeoutRate.record(latency > REPLY_TIMEOUT_MILLIS ? 1 : 0);
+    }
+
+    /**
+     * Method that checks if a hospital is too slow or too backlogged to be
+     * sent a request. A degraded hospital is still let through once in a
+     * while as a probe, otherwise it would never get a chance to recover.
+     *
+     * @param hospitalQueueName the queue of the hospital to check
+     * @return true if the hospital should be skipped, otherwise false
+     */
+    public synchronized boolean isDegraded(String hospitalQueueName) {
+        expireOutstandingRequests();
+        HospitalStatistics statistics = getStatistics(hospitalQueueName);
+        boolean degraded = statistics.timeoutRate.get() > MAX_TIMEOUT_RATE
+                || statistics.outstandingRequests >= MAX_OUTSTANDING_REQUESTS;
+        if (!degraded) return false;
+        // let a probe through if the hospital has not been tried for a while
+        long now = System.currentTimeMillis();
+        if (now - statistics.lastProbeAt >= PROBE_INTERVAL_MILLIS) {
+            statistics.lastProbeAt = now;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Method that returns the moving average reply latency of a hospital
+     *
+     * @param hospitalQueueName the queue of the hospital
+     * @return the average latency in milliseconds
+     */
+    public synchronized double getAverageLatency(String hospitalQueueName) {
+        return getStatistics(hospitalQueueName).averageLatency.get();
+    }
+
+    /**
+     * Method that returns a percentile of the recent reply latencies of a hospital
+     *
+     * @param hospitalQueueName the queue of the hospital
+     * @param percentile the percentile between 0 and 1, e.g. 0.95
+     * @return the latency in milliseconds, or -1 if there are not enough samples yet
+     */
+    public synchronized long getLatencyPercentile(String hospitalQueueName, double percentile) {
+        LatencySamples latencySamples = getStatistics(hospitalQueueName).latencySamples;
+        if (latencySamples.size() < MIN_LATENCY_SAMPLES) return -1;
+        return latencySamples.getPercentile(percentile);
+    }
+
+    /**
+     * Method that returns the moving timeout rate of a hospital
+     *
+     * @param hospitalQueueName the queue of the hospital
+     * @return the timeout rate between 0 and 1
+     */
+    public synchronized double getTimeoutRate(String hospitalQueueName) {
+        return getStatistics(hospitalQueueName).timeoutRate.get();
+    }
+
+    /**
+     * Method that counts every request that waited longer than the reply timeout
+     * as a timeout and stops waiting for it. Only the expired head of the queue
+     * is taken off, so a check costs nothing when no request expired.
+     */
+    private void expireOutstandingRequests() {
+        long now = System.currentTimeMillis();
+        OutstandingRequest outstandingRequest;
+        while ((outstandingRequest = this.outstandingRequestsBySentAt.peek()) != null
+                && now - outstandingRequest.sentAt > REPLY_TIMEOUT_MILLIS) {
+            this.outstandingRequestsBySentAt.poll();
+            // skip the request if its reply was received, even if it came too late
+            if (this.correlationToOutstandingRequestMap.get(outstandingRequest.key) != outstandingRequest) continue;
+            this.correlationToOutstandingRequestMap.remove(outstandingRequest.key);
+            HospitalStatistics statistics = getStatistics(outstandingRequest.hospitalQueueName);
+            statistics.outstandingRequests--;
+            statistics.timeoutRate.record(1);
+        }
+    }
+
+    /**
+     * Method that creates the key of an outstanding request
+     *
+     * @param hospitalQueueName the queue the request was sent to
+     * @param correlationId the ID the reply is going to be correlated with
+     * @return String key of the request
+     */
+    private static String createKey(String hospitalQueueName, String correlationId) {
+        return correlationId + "|" + hospitalQueueName;
+    }
+
+    /**
+     * Method that returns the statistics of a hospital queue,
+     * creating them the first time the queue is seen
+     *
+     * @param hospitalQueueName the queue of the hospital
+     * @return HospitalStatistics of the queue
+     */
+    private HospitalStatistics getStatistics(String hospitalQueueName) {
+        return this.hospitalQueueToStatisticsMap.computeIfAbsent(hospitalQueueName, q -> new HospitalStatistics());
+    }
+
+    /**
+     * Statistics that are kept for a single hospital queue, the timeout rate starts at 0
+     */
+    private static class HospitalStatistics {
+        private final MovingAverage averageLatency = new MovingAverage();
+        private final MovingAverage timeoutRate = new MovingAverage(MovingAverage.DEFAULT_SMOOTHING_FACTOR, 0);
+        private final LatencySamples latencySamples = new LatencySamples();
+        private int outstandingRequests;
+        private long lastProbeAt;
+    }
+
+    /**
+     * A request that is still waiting for a reply
+     */
+    private static class OutstandingRequest {
+        private final String key;
+        private final String hospitalQueueName;
+        private final long sentAt;
+
+        private OutstandingRequest(String key, String hospitalQueueName, long sentAt) {
+            this.key = key;
+            this.hospitalQueueName = hospitalQueueName;
+            this.sentAt = sentAt;
+        }
+    }
+}
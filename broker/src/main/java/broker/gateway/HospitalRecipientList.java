@@ -1,10 +1,11 @@
 package broker.gateway;
 
-import broker.model.hospital.HospitalCostsRequest;
-import net.sourceforge.jeval.EvaluationException;
-import net.sourceforge.jeval.Evaluator;
+import model.client.QuotePriority;
+import model.hospital.HospitalCostsRequest;
 
 import javax.jms.JMSException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A class responsible for evaluating to which hospitals
@@ -13,92 +14,160 @@ import javax.jms.JMSException;
 public class HospitalRecipientList {
 
     /**
-     * Store the queue names for all hospitals
+     * Declare the BrokerHospitalClientGateway
      */
-    private static final String HOSPITAL_CATHARINA_QUEUE_NAME = "catharinaRequestQueue";
-    private static final String HOSPITAL_MAXIMA_QUEUE_NAME = "maximaRequestQueue";
-    private static final String HOSPITAL_UMC_QUEUE_NAME = "umcRequestQueue";
+    private BrokerHospitalClientGateway brokerHospitalClientGateway;
 
     /**
-     * Define the rules for all hospital that are used by Jeval
+     * Declare the HospitalRegistry that holds the hospitals and their rules
      */
-    private static final String HOSPITAL_CATARINA_RULE =
-            "startsWith('#{treatmentCode}', 'ORT', 0) && 10 <= #{patientAge}";
-    private static final String HOSPITAL_MAXIMA_RULE = "18 <= #{patientAge}";
+    private HospitalRegistry hospitalRegistry;
 
     /**
-     * Declare the BrokerHospitalClientGateway
+     * Store whether degraded hospitals are skipped
      */
-    private BrokerHospitalClientGateway brokerHospitalClientGateway;
+    private boolean adaptiveRouting;
+
+    /**
+     * Constructor that sets the BrokerHospitalClientGateway and the HospitalRegistry
+     *
+     * @param brokerHospitalClientGateway to be set in property
+     * @param hospitalRegistry to be set in property
+     */
+    public HospitalRecipientList(
+            BrokerHospitalClientGateway brokerHospitalClientGateway,
+            HospitalRegistry hospitalRegistry
+    ) {
+        this(brokerHospitalClientGateway, hospitalRegistry, false);
+    }
 
     /**
-     * Constructor that sets the BrokerHospitalClientGateway
+     * Constructor that sets the BrokerHospitalClientGateway, the HospitalRegistry
+     * and whether hospitals that are degraded or backlogged should be skipped
      *
      * @param brokerHospitalClientGateway to be set in property
+     * @param hospitalRegistry to be set in property
+     * @param adaptiveRouting true to skip degraded hospitals
      */
-    public HospitalRecipientList(BrokerHospitalClientGateway brokerHospitalClientGateway) {
+    public HospitalRecipientList(
+            BrokerHospitalClientGateway brokerHospitalClientGateway,
+            HospitalRegistry hospitalRegistry,
+            boolean adaptiveRouting
+    ) {
         this.brokerHospitalClientGateway = brokerHospitalClientGateway;
+        this.hospitalRegistry = hospitalRegistry;
+        this.adaptiveRouting = adaptiveRouting;
     }
 
     /**
-     * Method that sends a HospitalCostsRequest to hospitals
-     * based on the defined rules
+     * Method that sends a HospitalCostsRequest to the hospitals in the registry
+     * whose rules match the request. When adaptive routing is on, hospitals
+     * that are degraded are skipped, except the ones marked as always.
+     * If every matching hospital is degraded the request is still sent
+     * to the first one, so that the aggregation gets at least one reply.
      *
      * @param hospitalCostsRequest to be sent
      * @param aggregationId to identify all request that belong to the same aggregation
-     * @return Integer the number of banks to which the HospitalCostsRequest was send
+     * @return List of the queue names of the hospitals to which the HospitalCostsRequest was send
      * @throws JMSException if something goes wrong with JMS
      */
-    public int sendHospitalCostsRequest(HospitalCostsRequest hospitalCostsRequest, Integer aggregationId)
+    public List<String> sendHospitalCostsRequest(HospitalCostsRequest hospitalCostsRequest, long aggregationId)
             throws JMSException {
-        // create evaluator
-        Evaluator evaluator = createEvaluator(hospitalCostsRequest);
-        /* counter that keeps track to how many hospitals the request was sent
-         * starts with 1 because one of the hospitals always receives the request */
-        int counter = 1;
-        try {
-            // evaluate Catharina rule, send request and increment counter
-            if (("1.0").equals(evaluator.evaluate(HOSPITAL_CATARINA_RULE))) {
-                this.brokerHospitalClientGateway.requestApproximation(
-                        hospitalCostsRequest,
-                        aggregationId,
-                        HOSPITAL_CATHARINA_QUEUE_NAME
-                );
-                counter++;
-            }
-            // evaluate Maxima rule, send request and increment counter
-            if (("1.0").equals(evaluator.evaluate(HOSPITAL_MAXIMA_RULE))) {
-                this.brokerHospitalClientGateway.requestApproximation(
-                        hospitalCostsRequest,
-                        aggregationId,
-                        HOSPITAL_MAXIMA_QUEUE_NAME
-                );
-                counter++;
+        return sendHospitalCostsRequest(hospitalCostsRequest, aggregationId, QuotePriority.NORMAL);
+    }
+
+    /**
+     * Method that sends a HospitalCostsRequest to the matching hospitals like the method
+     * above, with the JMSPriority of the priority class of its quote
+     *
+     * @param hospitalCostsRequest to be sent
+     * @param aggregationId to identify all request that belong to the same aggregation
+     * @param priority the priority class of the quote the request belongs to
+     * @return List of the queue names of the hospitals to which the HospitalCostsRequest was send
+     * @throws JMSException if something goes wrong with JMS
+     */
+    public List<String> sendHospitalCostsRequest(
+            HospitalCostsRequest hospitalCostsRequest,
+            long aggregationId,
+            QuotePriority priority
+    ) throws JMSException {
+        List<String> hospitalQueueNames = findHospitalQueueNames(hospitalCostsRequest);
+        sendHospitalCostsRequest(hospitalCostsRequest, aggregationId, hospitalQueueNames, priority);
+        // return the hospitals the request was sent to
+        return hospitalQueueNames;
+    }
+
+    /**
+     * Method that finds the hospitals a HospitalCostsRequest is sent to: the hospitals in
+     * the registry whose rules match the request, without the degraded ones when adaptive
+     * routing is on, or the first matching hospital if every matching hospital is degraded
+     *
+     * @param hospitalCostsRequest to be sent
+     * @return List of the queue names of the hospitals, empty if no hospital matches
+     */
+    public List<String> findHospitalQueueNames(HospitalCostsRequest hospitalCostsRequest) {
+        // find the hospitals whose rules match the request
+        List<HospitalRoute> hospitalRoutes = this.hospitalRegistry.getHospitalRoutingTable()
+                .findHospitalRoutes(hospitalCostsRequest.getTreatmentCode(), hospitalCostsRequest.getAge());
+        // keep track to which hospitals the request is sent
+        List<String> hospitalQueueNames = new ArrayList<>();
+        for (HospitalRoute hospitalRoute : hospitalRoutes) {
+            if (hospitalRoute.isAlways() || isAvailable(hospitalRoute.getQueueName())) {
+                hospitalQueueNames.add(hospitalRoute.getQueueName());
             }
-        } catch (EvaluationException e) {
-            e.printStackTrace();
         }
-        // always send request to UMC
+        // fall back to the first matching hospital if all of them are degraded
+        if (hospitalQueueNames.isEmpty() && !hospitalRoutes.isEmpty()) {
+            hospitalQueueNames.add(hospitalRoutes.get(0).getQueueName());
+        }
+        return hospitalQueueNames;
+    }
+
+    /**
+     * Method that sends a HospitalCostsRequest at once to hospitals that were found before,
+     * so that the aggregation can be created before any reply arrives
+     *
+     * @param hospitalCostsRequest to be sent
+     * @param aggregationId to identify all request that belong to the same aggregation
+     * @param hospitalQueueNames the queue names of the hospitals, nothing is sent if empty
+     * @param priority the priority class of the quote the request belongs to
+     * @throws JMSException if something goes wrong with JMS
+     */
+    public void sendHospitalCostsRequest(
+            HospitalCostsRequest hospitalCostsRequest,
+            long aggregationId,
+            List<String> hospitalQueueNames,
+            QuotePriority priority
+    ) throws JMSException {
+        if (hospitalQueueNames.isEmpty()) return;
         this.brokerHospitalClientGateway.requestApproximation(
                 hospitalCostsRequest,
                 aggregationId,
-                HOSPITAL_UMC_QUEUE_NAME
+                hospitalQueueNames,
+                priority
         );
-        // return counter
-        return counter;
     }
 
     /**
-     * Creates an instance of jeval.Evaluator and puts
-     * necessary fields for evaluating hospital rules
+     * Method that finds the request queue of the replica of a hospital
+     *
+     * @param hospitalQueueName the request queue of the hospital
+     * @return the request queue of the replica, or null if the hospital has no replica
+     */
+    public String findReplicaQueueName(String hospitalQueueName) {
+        HospitalRoute hospitalRoute =
+                this.hospitalRegistry.getHospitalRoutingTable().findHospitalRoute(hospitalQueueName);
+        return hospitalRoute == null ? null : hospitalRoute.getReplicaQueueName();
+    }
+
+    /**
+     * Method that checks if a hospital should receive requests
      *
-     * @param hospitalCostsRequest get necessary field values from here
-     * @return Evaluator instance
+     * @param hospitalQueueName the queue of the hospital
+     * @return false if adaptive routing is on and the hospital is degraded, otherwise true
      */
-    private Evaluator createEvaluator(HospitalCostsRequest hospitalCostsRequest) {
-        Evaluator evaluator = new Evaluator();
-        evaluator.putVariable("treatmentCode", hospitalCostsRequest.getTreatmentCode());
-        evaluator.putVariable("patientAge", Integer.toString(hospitalCostsRequest.getAge()));
-        return evaluator;
+    private boolean isAvailable(String hospitalQueueName) {
+        return !this.adaptiveRouting
+                || !this.brokerHospitalClientGateway.getHospitalPerformanceMonitor().isDegraded(hospitalQueueName);
     }
 }
@@ -0,0 +1,173 @@
+package broker.gateway;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class responsible for loading the hospitals, their queues and their routing
+ * rules from a JSON file and reloading them when the file changes. Every reload
+ * swaps in a new HospitalRoutingTable, aggregations that are already in flight
+ * keep the hospitals they were sent to.
+ */
+public class HospitalRegistry {
+
+    /**
+     * Store how often the file is checked for changes
+     */
+    private static final long RELOAD_CHECK_INTERVAL_MILLIS = 2_000;
+
+    /**
+     * Declare the file the hospitals are loaded from,
+     * or null if they are loaded from the classpath
+     */
+    private File registryFile;
+    private long registryFileLastModified;
+
+    /**
+     * Declare the routing table that is currently in use
+     */
+    private volatile HospitalRoutingTable hospitalRoutingTable;
+
+    /**
+     * Declare Gson object that parses the registry
+     */
+    private Gson serializer;
+
+    /**
+     * Constructor that loads the hospitals from a file, or from the classpath resource
+     * with the same name if the file does not exist. Only a file is watched for changes.
+     *
+     * @param registryFileName the name of the JSON file with the hospitals
+     * @throws IllegalArgumentException if the hospitals cannot be loaded
+     */
+    public HospitalRegistry(String registryFileName) throws IllegalArgumentException {
+        this.serializer = new Gson();
+        File file = new File(registryFileName);
+        if (file.isFile()) {
+            this.registryFile = file;
+            reload();
+            if (this.hospitalRoutingTable == null) {
+                throw new IllegalArgumentException("Hospital registry " + registryFileName + " cannot be loaded.");
+            }
+            startWatching();
+        } else {
+            loadFromClasspath(registryFileName);
+        }
+    }
+
+    /**
+     * Method that returns the routing table that is currently in use
+     *
+     * @return HospitalRoutingTable of the last successful load
+     */
+    public HospitalRoutingTable getHospitalRoutingTable() {
+        return this.hospitalRoutingTable;
+    }
+
+    /**
+     * Method that loads the hospitals from a classpath resource
+     *
+     * @param resourceName the name of the resource
+     * @throws IllegalArgumentException if the resource is missing or invalid
+     */
+    private void loadFromClasspath(String resourceName) throws IllegalArgumentException {
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream(resourceName);
+        if (inputStream == null) {
+            throw new IllegalArgumentException("Hospital registry " + resourceName + " not found.");
+        }
+        try (Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8)) {
+            this.hospitalRoutingTable = parse(reader);
+        } catch (IOException | JsonParseException e) {
+            throw new IllegalArgumentException("Hospital registry " + resourceName + " cannot be loaded.", e);
+        }
+    }
+
+    /**
+     * Method that starts a daemon thread checking the file for changes
+     */
+    private void startWatching() {
+        ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hospital-registry-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(() -> {
+            if (this.registryFile.lastModified() != this.registryFileLastModified) reload();
+        }, RELOAD_CHECK_INTERVAL_MILLIS, RELOAD_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Method that loads the file and swaps in the new routing table.
+     * If the file is invalid the previous routing table stays in use.
+     */
+    private void reload() {
+        this.registryFileLastModified = this.registryFile.lastModified();
+        try (Reader reader = Files.newBufferedReader(this.registryFile.toPath(), StandardCharsets.UTF_8)) {
+            this.hospitalRoutingTable = parse(reader);
+        } catch (IOException | JsonParseException | IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Method that parses the hospitals and builds a routing table
+     *
+     * @param reader to read the JSON from
+     * @return HospitalRoutingTable with all hospitals
+     * @throws IllegalArgumentException if a hospital has no name or queue
+     */
+    private HospitalRoutingTable parse(Reader reader) throws IllegalArgumentException {
+        HospitalRegistryDefinition definition = this.serializer.fromJson(reader, HospitalRegistryDefinition.class);
+        if (definition == null || definition.hospitals == null || definition.hospitals.isEmpty()) {
+            throw new IllegalArgumentException("Hospital registry contains no hospitals.");
+        }
+        List<HospitalRoute> hospitalRoutes = new ArrayList<>();
+        for (HospitalDefinition hospital : definition.hospitals) {
+            if (hospital.name == null || hospital.queue == null) {
+                throw new IllegalArgumentException("Hospital name or queue is empty.");
+            }
+            hospitalRoutes.add(new HospitalRoute(
+                    hospital.name,
+                    hospital.queue,
+                    hospital.treatmentCodePrefix != null ? hospital.treatmentCodePrefix : "",
+                    hospital.minAge != null ? hospital.minAge : 0,
+                    hospital.maxAge != null ? hospital.maxAge : Integer.MAX_VALUE,
+                    hospital.always,
+                    hospital.replicaQueue));
+        }
+        return new HospitalRoutingTable(hospitalRoutes);
+    }
+
+    /**
+     * The layout of the registry file
+     */
+    private static class HospitalRegistryDefinition {
+        private List<HospitalDefinition> hospitals;
+    }
+
+    /**
+     * The layout of a single hospital in the registry file
+     */
+    private static class HospitalDefinition {
+        private String name;
+        private String queue;
+        private String treatmentCodePrefix;
+        private Integer minAge;
+        private Integer maxAge;
+        private boolean always;
+        private String replicaQueue;
+    }
+}
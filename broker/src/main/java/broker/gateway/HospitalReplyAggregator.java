@@ -1,74 +1,160 @@
 package broker.gateway;
 
-import broker.model.hospital.HospitalCostsReply;
+import broker.util.LongObjectHashMap;
+import model.hospital.HospitalCostsReply;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
- * A class responsible for administering the received HospitalCostsReply
+ * A class responsible for administering the received HospitalCostsReply.
+ * Every reply is folded into the best reply of its aggregation as it arrives,
+ * so only the best reply so far is kept per aggregation. Every aggregation keeps
+ * the correlation IDs of the replies it received and the hospitals that replied,
+ * so a redelivered reply and the second reply of a hospital, e.g. the loser of
+ * a hedged request, are dropped before they are counted. Both sets live only as
+ * long as their aggregation.
  */
 public class HospitalReplyAggregator {
 
     /**
-     * Map the aggregationId to the number of expected replies
-     * Map the aggregationId to the received replies
+     * Declare the strategy that decides which reply is the best
      */
-    private Map<Integer, Integer> aggregationIdToNumberExpectedRepliesMap;
-    private Map<Integer, ArrayList<HospitalCostsReply>> aggregationIdToReceivedRepliesMap;
+    private HospitalReplySelectionStrategy hospitalReplySelectionStrategy;
 
     /**
-     * Constructor that initializes both maps
+     * Map the aggregationId to the aggregation with its best reply so far
+     */
+    private LongObjectHashMap<Aggregation> aggregationIdToAggregationMap;
+
+    /**
+     * Store the number of dropped duplicate replies
+     */
+    private long duplicateReplies;
+
+    /**
+     * Constructor that selects the reply with the lowest price
      */
     public HospitalReplyAggregator() {
-        this.aggregationIdToNumberExpectedRepliesMap = new HashMap<>();
-        this.aggregationIdToReceivedRepliesMap = new HashMap<>();
+        this(new MinPriceSelectionStrategy());
+    }
+
+    /**
+     * Constructor that initializes the map and sets the selection strategy
+     *
+     * @param hospitalReplySelectionStrategy the strategy that decides which reply is the best
+     */
+    public HospitalReplyAggregator(HospitalReplySelectionStrategy hospitalReplySelectionStrategy) {
+        this.hospitalReplySelectionStrategy = hospitalReplySelectionStrategy;
+        this.aggregationIdToAggregationMap = new LongObjectHashMap<>();
     }
 
     /**
-     * Create a new aggregation by populating maps
+     * Create a new aggregation that waits for the given number of replies
      *
      * @param aggregationId the identifier of the aggregation
      * @param numberOfExpectedReplies the expected number of replies
      */
-    public void createAggregation(Integer aggregationId, Integer numberOfExpectedReplies) {
-        this.aggregationIdToNumberExpectedRepliesMap.put(aggregationId, numberOfExpectedReplies);
-        this.aggregationIdToReceivedRepliesMap.put(aggregationId, new ArrayList<>());
+    public synchronized void createAggregation(long aggregationId, int numberOfExpectedReplies) {
+        this.aggregationIdToAggregationMap.put(aggregationId, new Aggregation(numberOfExpectedReplies));
     }
 
     /**
-     * Method that adds a new HospitalCostsReply and
-     * checks if all expected replies are received
+     * Remove an aggregation without pushing it, e.g. when its requests could not be sent
      *
-     * @param hospitalCostsReply to be added to administration
      * @param aggregationId the identifier of the aggregation
      */
-    public void newHospitalCostsReplyReceived(HospitalCostsReply hospitalCostsReply, Integer aggregationId) {
-        this.aggregationIdToReceivedRepliesMap.get(aggregationId).add(hospitalCostsReply);
-        checkAllRepliesReceivedForAggregationId(aggregationId);
+    public synchronized void removeAggregation(long aggregationId) {
+        this.aggregationIdToAggregationMap.remove(aggregationId);
     }
 
     /**
-     * Method that checks if all expected replies for a given aggregationId
-     * are received, if yes then pushes the one with lowest price through the
-     * callback
+     * Method that folds a new HospitalCostsReply into the best reply
+     * of its aggregation and checks if all expected replies are received,
+     * a reply that was already received or of a hospital that already replied
+     * to the aggregation is dropped
      *
-     * @param aggregationId identification of the aggregation
+     * @param hospitalCostsReply to be added to administration
+     * @param aggregationId the identifier of the aggregation
+     * @param correlationId the ID of the request the reply belongs to
+     * @param hospitalQueueName the queue of the hospital the reply counts for
+     * @throws IllegalArgumentException if the correlation ID or the hospital queue name is missing
      */
-    private void checkAllRepliesReceivedForAggregationId(Integer aggregationId) {
-        ArrayList<HospitalCostsReply> hospitalCostsReplies = this.aggregationIdToReceivedRepliesMap.get(aggregationId);
-        if (hospitalCostsReplies.size() == this.aggregationIdToNumberExpectedRepliesMap.get(aggregationId)) {
-            double minPrice = Integer.MAX_VALUE;
-            HospitalCostsReply bestHospitalCostsReply = null;
-            for(HospitalCostsReply reply : hospitalCostsReplies) {
-                if (minPrice > reply.getPrice()) {
-                    minPrice = reply.getPrice();
-                    bestHospitalCostsReply = reply;
-                }
+    public void newHospitalCostsReplyReceived(
+            HospitalCostsReply hospitalCostsReply,
+            long aggregationId,
+            String correlationId,
+            String hospitalQueueName
+    ) {
+        if (correlationId == null || hospitalQueueName == null) {
+            throw new IllegalArgumentException("Reply to aggregation " + aggregationId
+                    + " has no correlation ID or hospital queue name.");
+        }
+        synchronized (this) {
+            Aggregation aggregation = this.aggregationIdToAggregationMap.get(aggregationId);
+            // the aggregation already completed or expired
+            if (aggregation == null) return;
+            // a redelivered reply or the second reply of a hospital
+            if (!aggregation.repliedCorrelationIds.add(correlationId)
+                    || !aggregation.repliedHospitals.add(hospitalQueueName)) {
+                this.duplicateReplies++;
+                return;
+            }
+        }
+        // score outside the lock, a strategy may consult other components
+        double score = this.hospitalReplySelectionStrategy.score(hospitalCostsReply, hospitalQueueName);
+        HospitalCostsReply bestHospitalCostsReply;
+        synchronized (this) {
+            Aggregation aggregation = this.aggregationIdToAggregationMap.get(aggregationId);
+            // the aggregation already completed or expired
+            if (aggregation == null) return;
+            // the first reply with the lowest score wins
+            if (aggregation.bestReply == null || score < aggregation.bestScore) {
+                aggregation.bestReply = hospitalCostsReply;
+                aggregation.bestScore = score;
             }
-            onAllHospitalCostsRepliesReceived(bestHospitalCostsReply, aggregationId);
+            if (++aggregation.numberOfReceivedReplies < aggregation.numberOfExpectedReplies) return;
+            bestHospitalCostsReply = this.aggregationIdToAggregationMap.remove(aggregationId).bestReply;
         }
+        onAllHospitalCostsRepliesReceived(bestHospitalCostsReply, aggregationId);
+    }
+
+    /**
+     * Method that ends an aggregation before all expected replies are received
+     * and pushes the best one received so far through the callback
+     *
+     * @param aggregationId the identifier of the aggregation
+     */
+    public void expireAggregation(long aggregationId) {
+        Aggregation aggregation;
+        synchronized (this) {
+            aggregation = this.aggregationIdToAggregationMap.remove(aggregationId);
+        }
+        // the aggregation already completed
+        if (aggregation == null) return;
+        onAllHospitalCostsRepliesReceived(aggregation.bestReply, aggregationId);
+    }
+
+    /**
+     * Method that checks if a hospital replied to an aggregation
+     *
+     * @param aggregationId the identifier of the aggregation
+     * @param hospitalQueueName the queue of the hospital
+     * @return true if the hospital replied, false if it did not or the aggregation has ended
+     */
+    public synchronized boolean hasReplied(long aggregationId, String hospitalQueueName) {
+        Aggregation aggregation = this.aggregationIdToAggregationMap.get(aggregationId);
+        return aggregation != null && aggregation.repliedHospitals.contains(hospitalQueueName);
+    }
+
+    /**
+     * Method that returns the number of replies that were dropped because they
+     * were already received or the hospital already replied to the aggregation
+     *
+     * @return the number of duplicate replies
+     */
+    public synchronized long getDuplicateReplies() {
+        return this.duplicateReplies;
     }
 
     /**
@@ -76,8 +162,25 @@ public class HospitalReplyAggregator {
      * creating an instance of this class that pushes
      * a HospitalCostsReply for an aggregationId
      *
-     * @param hospitalCostsReply the HospitalCostsReply that is being pushed
+     * @param hospitalCostsReply the HospitalCostsReply that is being pushed, null if none was received
      * @param aggregationId the identification of the aggregation to which the HospitalCostsReply belongs
      */
-    public void onAllHospitalCostsRepliesReceived(HospitalCostsReply hospitalCostsReply, Integer aggregationId) {}
+    public void onAllHospitalCostsRepliesReceived(HospitalCostsReply hospitalCostsReply, long aggregationId) {}
+
+    /**
+     * The best reply of a single aggregation, how many replies it received,
+     * the correlation IDs of the received replies and the hospitals that replied
+     */
+    private static class Aggregation {
+        private final int numberOfExpectedReplies;
+        private final Set<String> repliedCorrelationIds = new HashSet<>();
+        private final Set<String> repliedHospitals = new HashSet<>();
+        private int numberOfReceivedReplies;
+        private HospitalCostsReply bestReply;
+        private double bestScore;
+
+        private Aggregation(int numberOfExpectedReplies) {
+            this.numberOfExpectedReplies = numberOfExpectedReplies;
+        }
+    }
 }
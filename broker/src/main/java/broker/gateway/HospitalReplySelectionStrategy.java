@@ -0,0 +1,20 @@
+package broker.gateway;
+
+import model.hospital.HospitalCostsReply;
+
+/**
+ * A strategy that decides which HospitalCostsReply of an aggregation is the best.
+ * Every reply is scored as it arrives and only the reply with the lowest score
+ * is kept, so an aggregation never has to retain all its replies.
+ */
+public interface HospitalReplySelectionStrategy {
+
+    /**
+     * Method that scores a HospitalCostsReply, the reply with the lowest score wins
+     *
+     * @param hospitalCostsReply the reply to score
+     * @param hospitalQueueName the queue of the hospital that sent the reply
+     * @return the score of the reply
+     */
+    double score(HospitalCostsReply hospitalCostsReply, String hospitalQueueName);
+}
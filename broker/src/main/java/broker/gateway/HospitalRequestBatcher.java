@@ -0,0 +1,118 @@
+package broker.gateway;
+
+import model.hospital.HospitalCostsRequestBatchItem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class responsible for grouping HospitalCostsRequests for the same
+ * hospital queue into batches. A batch is handed over as soon as it is
+ * full or when its time window has passed, whatever comes first.
+ */
+public class HospitalRequestBatcher {
+
+    /**
+     * Store the maximum size of a batch and how long a batch waits for more requests
+     */
+    private final int maxBatchSize;
+    private final long batchWindowMillis;
+
+    /**
+     * Map the hospital queue name to the batch that is being filled
+     */
+    private Map<String, List<HospitalCostsRequestBatchItem>> queueNameToBatchMap;
+
+    /**
+     * Declare the scheduler that hands over batches when their time window has passed
+     */
+    private ScheduledExecutorService flushScheduler;
+
+    /**
+     * Constructor that sets the batch limits and initializes the map and scheduler
+     *
+     * @param maxBatchSize the maximum number of requests in a batch
+     * @param batchWindowMillis how long the first request in a batch waits for more
+     */
+    public HospitalRequestBatcher(int maxBatchSize, long batchWindowMillis) {
+        this.maxBatchSize = maxBatchSize;
+        this.batchWindowMillis = batchWindowMillis;
+        this.queueNameToBatchMap = new HashMap<>();
+        this.flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hospital-request-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Method that adds a request to the batch of a hospital queue
+     *
+     * @param queueName the queue the request is meant for
+     * @param batchItem the request with its correlation and aggregation ID
+     */
+    public void addHospitalCostsRequest(String queueName, HospitalCostsRequestBatchItem batchItem) {
+        List<HospitalCostsRequestBatchItem> fullBatch = null;
+        synchronized (this) {
+            List<HospitalCostsRequestBatchItem> batch = this.queueNameToBatchMap.get(queueName);
+            // start a new batch and schedule its time window
+            if (batch == null) {
+                batch = new ArrayList<>(this.maxBatchSize);
+                this.queueNameToBatchMap.put(queueName, batch);
+                List<HospitalCostsRequestBatchItem> scheduledBatch = batch;
+                this.flushScheduler.schedule(
+                        () -> flushBatch(queueName, scheduledBatch),
+                        this.batchWindowMillis,
+                        TimeUnit.MILLISECONDS);
+            }
+            batch.add(batchItem);
+            if (batch.size() >= this.maxBatchSize) {
+                this.queueNameToBatchMap.remove(queueName);
+                fullBatch = batch;
+            }
+        }
+        // hand over outside the lock, sending can take a while
+        if (fullBatch != null) onBatchReady(queueName, fullBatch);
+    }
+
+    /**
+     * Method that hands over all batches that are being filled
+     */
+    public void flushAllBatches() {
+        Map<String, List<HospitalCostsRequestBatchItem>> batches;
+        synchronized (this) {
+            batches = this.queueNameToBatchMap;
+            this.queueNameToBatchMap = new HashMap<>();
+        }
+        batches.forEach(this::onBatchReady);
+    }
+
+    /**
+     * Method that hands over a batch when its time window has passed,
+     * unless it was already handed over because it was full
+     *
+     * @param queueName the queue the batch is meant for
+     * @param batch the batch to be handed over
+     */
+    private void flushBatch(String queueName, List<HospitalCostsRequestBatchItem> batch) {
+        synchronized (this) {
+            if (this.queueNameToBatchMap.get(queueName) != batch) return;
+            this.queueNameToBatchMap.remove(queueName);
+        }
+        onBatchReady(queueName, batch);
+    }
+
+    /**
+     * A callback that needs to be implemented when creating
+     * an instance of this class that pushes a batch to be sent
+     *
+     * @param queueName the queue the batch is meant for
+     * @param batch the requests in the batch
+     */
+    public void onBatchReady(String queueName, List<HospitalCostsRequestBatchItem> batch) {}
+}
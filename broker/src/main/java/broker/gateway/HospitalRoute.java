@@ -0,0 +1,117 @@
+package broker.gateway;
+
+/**
+ * A class that holds a hospital from the HospitalRegistry
+ * together with the rule that decides which requests it receives
+ */
+public final class HospitalRoute {
+
+    /**
+     * Store the name and request queue name of the hospital
+     */
+    private final String hospitalName;
+    private final String queueName;
+
+    /**
+     * Store the routing rule: the prefix the treatment code has to start with
+     * and the age range of the patient, both ends inclusive
+     */
+    private final String treatmentCodePrefix;
+    private final int minAge;
+    private final int maxAge;
+
+    /**
+     * Store whether the hospital always receives the request,
+     * even when adaptive routing considers it degraded
+     */
+    private final boolean always;
+
+    /**
+     * Store the request queue of a replica instance of the hospital that gets a hedged request
+     * when the hospital replies slowly, null if the hospital has no replica and is not hedged
+     */
+    private final String replicaQueueName;
+
+    /**
+     * Constructor that sets all properties of a hospital without a replica
+     *
+     * @param hospitalName the name of the hospital
+     * @param queueName the request queue name of the hospital
+     * @param treatmentCodePrefix the prefix the treatment code has to start with, empty for any
+     * @param minAge the minimum age of the patient
+     * @param maxAge the maximum age of the patient
+     * @param always true if the hospital is never skipped
+     */
+    public HospitalRoute(
+            String hospitalName,
+            String queueName,
+            String treatmentCodePrefix,
+            int minAge,
+            int maxAge,
+            boolean always
+    ) {
+        this(hospitalName, queueName, treatmentCodePrefix, minAge, maxAge, always, null);
+    }
+
+    /**
+     * Constructor that sets all properties
+     *
+     * @param hospitalName the name of the hospital
+     * @param queueName the request queue name of the hospital
+     * @param treatmentCodePrefix the prefix the treatment code has to start with, empty for any
+     * @param minAge the minimum age of the patient
+     * @param maxAge the maximum age of the patient
+     * @param always true if the hospital is never skipped
+     * @param replicaQueueName the request queue of the replica of the hospital, null if it has none
+     */
+    public HospitalRoute(
+            String hospitalName,
+            String queueName,
+            String treatmentCodePrefix,
+            int minAge,
+            int maxAge,
+            boolean always,
+            String replicaQueueName
+    ) {
+        this.hospitalName = hospitalName;
+        this.queueName = queueName;
+        this.treatmentCodePrefix = treatmentCodePrefix;
+        this.minAge = minAge;
+        this.maxAge = maxAge;
+        this.always = always;
+        this.replicaQueueName = replicaQueueName;
+    }
+
+    public String getHospitalName() {
+        return hospitalName;
+    }
+
+    public String getQueueName() {
+        return queueName;
+    }
+
+    public String getTreatmentCodePrefix() {
+        return treatmentCodePrefix;
+    }
+
+    public int getMinAge() {
+        return minAge;
+    }
+
+    public int getMaxAge() {
+        return maxAge;
+    }
+
+    public boolean isAlways() {
+        return always;
+    }
+
+    public String getReplicaQueueName() {
+        return replicaQueueName;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + hospitalName + "]-[" + queueName + "]";
+    }
+}
@@ -0,0 +1,130 @@
+package broker.gateway;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable index of HospitalRoutes that finds the hospitals for a request
+ * by looking up the prefixes of the treatment code and the age of the patient,
+ * so the cost of routing does not grow with the number of hospitals
+ */
+public final class HospitalRoutingTable {
+
+    /**
+     * Store the highest age that is indexed, older patients are looked up with this age
+     */
+    public static final int MAX_INDEXED_AGE = 150;
+
+    /**
+     * Store all routes in the order of the registry
+     */
+    private final List<HospitalRoute> hospitalRoutes;
+
+    /**
+     * Map every treatment code prefix to the routes with that prefix, indexed by patient age
+     */
+    private final Map<String, HospitalRoute[][]> prefixToRoutesByAgeMap;
+
+    /**
+     * Store the length of the longest prefix, no longer prefixes have to be looked up
+     */
+    private final int maxPrefixLength;
+
+    /**
+     * Map the request queue name of every hospital to its route
+     */
+    private final Map<String, HospitalRoute> queueToRouteMap;
+
+    /**
+     * Constructor that builds the index for the given routes
+     *
+     * @param hospitalRoutes the routes to be indexed
+     */
+    public HospitalRoutingTable(List<HospitalRoute> hospitalRoutes) {
+        this.hospitalRoutes = Collections.unmodifiableList(new ArrayList<>(hospitalRoutes));
+        this.prefixToRoutesByAgeMap = new HashMap<>();
+        this.queueToRouteMap = new HashMap<>();
+
+        // group the routes per prefix and per age
+        Map<String, List<List<HospitalRoute>>> prefixToRouteListsByAge = new HashMap<>();
+        int longestPrefix = 0;
+        for (HospitalRoute hospitalRoute : this.hospitalRoutes) {
+            this.queueToRouteMap.put(hospitalRoute.getQueueName(), hospitalRoute);
+            String prefix = hospitalRoute.getTreatmentCodePrefix();
+            longestPrefix = Math.max(longestPrefix, prefix.length());
+            List<List<HospitalRoute>> routeListsByAge = prefixToRouteListsByAge.computeIfAbsent(prefix, p -> {
+                List<List<HospitalRoute>> lists = new ArrayList<>(MAX_INDEXED_AGE + 1);
+                for (int age = 0; age <= MAX_INDEXED_AGE; age++) lists.add(new ArrayList<>());
+                return lists;
+            });
+            int fromAge = clampAge(hospitalRoute.getMinAge());
+            int toAge = clampAge(hospitalRoute.getMaxAge());
+            for (int age = fromAge; age <= toAge; age++) {
+                routeListsByAge.get(age).add(hospitalRoute);
+            }
+        }
+        this.maxPrefixLength = longestPrefix;
+
+        // freeze the groups into arrays
+        for (Map.Entry<String, List<List<HospitalRoute>>> entry : prefixToRouteListsByAge.entrySet()) {
+            HospitalRoute[][] routesByAge = new HospitalRoute[MAX_INDEXED_AGE + 1][];
+            for (int age = 0; age <= MAX_INDEXED_AGE; age++) {
+                routesByAge[age] = entry.getValue().get(age).toArray(new HospitalRoute[0]);
+            }
+            this.prefixToRoutesByAgeMap.put(entry.getKey(), routesByAge);
+        }
+    }
+
+    /**
+     * Method that finds the routes of all hospitals that accept a request
+     *
+     * @param treatmentCode the treatment code of the request
+     * @param age the age of the patient
+     * @return List of the matching HospitalRoutes
+     */
+    public List<HospitalRoute> findHospitalRoutes(String treatmentCode, int age) {
+        List<HospitalRoute> matchingRoutes = new ArrayList<>();
+        int indexedAge = clampAge(age);
+        int prefixLength = Math.min(treatmentCode.length(), this.maxPrefixLength);
+        // look up every prefix of the treatment code, including the empty one
+        for (int length = 0; length <= prefixLength; length++) {
+            HospitalRoute[][] routesByAge = this.prefixToRoutesByAgeMap.get(treatmentCode.substring(0, length));
+            if (routesByAge != null) {
+                Collections.addAll(matchingRoutes, routesByAge[indexedAge]);
+            }
+        }
+        return matchingRoutes;
+    }
+
+    /**
+     * Method that finds the route of the hospital with a given request queue
+     *
+     * @param queueName the request queue name of the hospital
+     * @return HospitalRoute of the hospital, or null if no hospital has the queue
+     */
+    public HospitalRoute findHospitalRoute(String queueName) {
+        return this.queueToRouteMap.get(queueName);
+    }
+
+    /**
+     * Method that returns all routes in the order of the registry
+     *
+     * @return List of all HospitalRoutes
+     */
+    public List<HospitalRoute> getHospitalRoutes() {
+        return this.hospitalRoutes;
+    }
+
+    /**
+     * Method that limits an age to the indexed range
+     *
+     * @param age the age to be limited
+     * @return the age between 0 and MAX_INDEXED_AGE
+     */
+    private static int clampAge(int age) {
+        return Math.max(0, Math.min(age, MAX_INDEXED_AGE));
+    }
+}
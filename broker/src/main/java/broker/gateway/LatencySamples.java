@@ -0,0 +1,91 @@
+package broker.gateway;
+
+import java.util.Arrays;
+
+/**
+ * A window of the most recent latencies for calculating percentiles. The samples are
+ * kept in the order they were recorded and sorted, the sorted copy is updated with every
+ * recorded latency so that a percentile is a lookup instead of a sort.
+ * Not thread safe, the owner synchronizes.
+ */
+public class LatencySamples {
+
+    /**
+     * Store how many recent latencies the monitors of the broker keep
+     */
+    public static final int DEFAULT_CAPACITY = 128;
+
+    /**
+     * Store the samples in the order they were recorded, in a ring, and sorted,
+     * and how many were recorded, which wraps between capacity and twice the capacity
+     */
+    private final long[] samples;
+    private final long[] sortedSamples;
+    private int recorded;
+
+    /**
+     * Constructor that keeps the default number of recent latencies
+     */
+    public LatencySamples() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor that keeps the given number of recent latencies
+     *
+     * @param capacity how many recent latencies are kept
+     */
+    public LatencySamples(int capacity) {
+        this.samples = new long[capacity];
+        this.sortedSamples = new long[capacity];
+    }
+
+    /**
+     * Method that records a latency, replacing the oldest one once the window is full
+     *
+     * @param latency the latency in milliseconds
+     */
+    public void record(long latency) {
+        int capacity = this.samples.length;
+        int sampleCount = size();
+        int slot = this.recorded % capacity;
+        // take the sample that is overwritten out of the sorted samples
+        if (sampleCount == capacity) {
+            int removeIndex = Arrays.binarySearch(this.sortedSamples, 0, sampleCount, this.samples[slot]);
+            System.arraycopy(this.sortedSamples, removeIndex + 1,
+                    this.sortedSamples, removeIndex, sampleCount - removeIndex - 1);
+            sampleCount--;
+        }
+        // insert the new sample into the sorted samples
+        int insertIndex = Arrays.binarySearch(this.sortedSamples, 0, sampleCount, latency);
+        if (insertIndex < 0) insertIndex = -insertIndex - 1;
+        System.arraycopy(this.sortedSamples, insertIndex,
+                this.sortedSamples, insertIndex + 1, sampleCount - insertIndex);
+        this.sortedSamples[insertIndex] = latency;
+        this.samples[slot] = latency;
+        // wrap before the count overflows, keeping the position in the ring
+        this.recorded = this.recorded + 1 == 2 * capacity ? capacity : this.recorded + 1;
+    }
+
+    /**
+     * Method that returns how many latencies are in the window
+     *
+     * @return the number of samples, at most the capacity
+     */
+    public int size() {
+        return Math.min(this.recorded, this.samples.length);
+    }
+
+    /**
+     * Method that returns a percentile of the latencies in the window
+     *
+     * @param percentile the percentile between 0 and 1, e.g. 0.95
+     * @return the latency in milliseconds, or -1 if no latency was recorded
+     */
+    public long getPercentile(double percentile) {
+        int sampleCount = size();
+        if (sampleCount == 0) return -1;
+        int index = (int) Math.ceil(percentile * sampleCount) - 1;
+        return this.sortedSamples[Math.max(0, Math.min(index, sampleCount - 1))];
+    }
+}
@@ -0,0 +1,21 @@
+package broker.gateway;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+/**
+ * A handler of received JMS messages that, unlike a MessageListener, lets its
+ * failures escape, so that the DeadLetterChannel can decide whether the message
+ * is retried or dead-lettered
+ */
+public interface MessageHandler {
+
+    /**
+     * Method that handles a received message
+     *
+     * @param message the received message
+     * @throws javax.jms.MessageFormatException if the message body cannot be read, which is never retried
+     * @throws JMSException if something goes wrong with JMS, which is retried
+     */
+    void handleMessage(Message message) throws JMSException;
+}
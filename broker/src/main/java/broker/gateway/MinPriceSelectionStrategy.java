@@ -0,0 +1,14 @@
+package broker.gateway;
+
+import model.hospital.HospitalCostsReply;
+
+/**
+ * A HospitalReplySelectionStrategy that selects the reply with the lowest price
+ */
+public class MinPriceSelectionStrategy implements HospitalReplySelectionStrategy {
+
+    @Override
+    public double score(HospitalCostsReply hospitalCostsReply, String hospitalQueueName) {
+        return hospitalCostsReply.getPrice();
+    }
+}
@@ -0,0 +1,35 @@
+package broker.gateway;
+
+import model.hospital.HospitalCostsReply;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A HospitalReplySelectionStrategy that selects the reply with the lowest total cost,
+ * which is the price of the hospital plus the costs that come on top of it
+ * for that hospital, e.g. an administration fee or a transport surcharge
+ */
+public class MinTotalCostSelectionStrategy implements HospitalReplySelectionStrategy {
+
+    /**
+     * Map the hospital name to the costs that are added to its price
+     */
+    private final Map<String, Double> hospitalNameToAdditionalCostsMap;
+
+    /**
+     * Constructor that sets the additional costs of every hospital,
+     * hospitals that are not in the map have no additional costs
+     *
+     * @param hospitalNameToAdditionalCostsMap the additional costs per hospital name
+     */
+    public MinTotalCostSelectionStrategy(Map<String, Double> hospitalNameToAdditionalCostsMap) {
+        this.hospitalNameToAdditionalCostsMap = new HashMap<>(hospitalNameToAdditionalCostsMap);
+    }
+
+    @Override
+    public double score(HospitalCostsReply hospitalCostsReply, String hospitalQueueName) {
+        Double additionalCosts = this.hospitalNameToAdditionalCostsMap.get(hospitalCostsReply.getHospitalName());
+        return hospitalCostsReply.getPrice() + (additionalCosts != null ? additionalCosts : 0);
+    }
+}
@@ -0,0 +1,72 @@
+package broker.gateway;
+
+/**
+ * An exponentially weighted moving average, every new sample moves the average
+ * by the smoothing factor towards itself. The first sample sets the average,
+ * unless the average starts at a given value. Not thread safe, the owner synchronizes.
+ */
+public class MovingAverage {
+
+    /**
+     * Store the weight of a new sample that the monitors of the broker use
+     */
+    public static final double DEFAULT_SMOOTHING_FACTOR = 0.2;
+
+    /**
+     * Store the weight of a new sample, the average and whether it has a value yet
+     */
+    private final double smoothingFactor;
+    private double average;
+    private boolean hasValue;
+
+    /**
+     * Constructor that uses the default smoothing factor and starts without a value
+     */
+    public MovingAverage() {
+        this(DEFAULT_SMOOTHING_FACTOR);
+    }
+
+    /**
+     * Constructor that starts without a value, the first sample sets the average
+     *
+     * @param smoothingFactor the weight of a new sample between 0 and 1
+     */
+    public MovingAverage(double smoothingFactor) {
+        this.smoothingFactor = smoothingFactor;
+    }
+
+    /**
+     * Constructor that starts at a given value, e.g. a rate that starts at 0
+     *
+     * @param smoothingFactor the weight of a new sample between 0 and 1
+     * @param initialAverage the value the average starts at
+     */
+    public MovingAverage(double smoothingFactor, double initialAverage) {
+        this.smoothingFactor = smoothingFactor;
+        this.average = initialAverage;
+        this.hasValue = true;
+    }
+
+    /**
+     * Method that moves the average towards a new sample
+     *
+     * @param sample the new sample
+     */
+    public void record(double sample) {
+        if (!this.hasValue) {
+            this.average = sample;
+            this.hasValue = true;
+        } else {
+            this.average += this.smoothingFactor * (sample - this.average);
+        }
+    }
+
+    /**
+     * Method that returns the average
+     *
+     * @return the average, 0 if no sample was recorded and no initial value was given
+     */
+    public double get() {
+        return this.average;
+    }
+}
@@ -0,0 +1,19 @@
+package broker.gateway;
+
+/**
+ * Exception thrown while handling a message that belongs to nothing this broker instance
+ * is waiting for, e.g. a hospital reply of an aggregation that completed or expired
+ */
+public class OrphanedMessageException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor that sets the reason why the message is orphaned
+     *
+     * @param message the reason why the message is orphaned
+     */
+    public OrphanedMessageException(String message) {
+        super(message);
+    }
+}
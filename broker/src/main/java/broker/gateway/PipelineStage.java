@@ -0,0 +1,183 @@
+package broker.gateway;
+
+import broker.util.RingBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A stage of the broker pipeline: the events of the stage wait in a bounded ring buffer
+ * and are processed by a fixed number of threads of their own, so a slow stage only
+ * holds up the stages that feed it once its ring buffer is full. The depth of the ring
+ * buffer, how long events waited and how long they took to process can be observed.
+ *
+ * @param <E> the type of the events of the stage
+ */
+public class PipelineStage<E> {
+
+    /**
+     * Store the name of the stage, which also names its threads
+     */
+    private final String name;
+
+    /**
+     * Declare the ring buffer the events wait in
+     */
+    private final RingBuffer<E> ringBuffer;
+
+    /**
+     * Declare the threads that process the events
+     */
+    private final List<Thread> threads;
+
+    /**
+     * Store the number of processed events and the moving averages
+     * of their queue wait and processing time in milliseconds
+     */
+    private long processed;
+    private final MovingAverage averageQueueWait = new MovingAverage();
+    private final MovingAverage averageProcessingTime = new MovingAverage();
+
+    /**
+     * Constructor that allocates the ring buffer and starts the threads of the stage
+     *
+     * @param name the name of the stage
+     * @param capacity the number of events that can wait in the stage
+     * @param threads the number of threads that process the events
+     */
+    public PipelineStage(String name, int capacity, int threads) {
+        this.name = name;
+        this.ringBuffer = new RingBuffer<>(capacity);
+        this.threads = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(this::processEvents, name + "-stage-" + i);
+            thread.setDaemon(true);
+            this.threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Method that hands an event to the stage, waiting while its ring buffer is full
+     *
+     * @param event the event to process
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void submit(E event) throws InterruptedException {
+        this.ringBuffer.put(event);
+    }
+
+    /**
+     * Method that stops the threads of the stage: a thread that waits for an event stops
+     * right away, a thread that processes an event stops when it is done with it, and
+     * the events that still wait in the ring buffer are not processed
+     */
+    public void close() {
+        for (Thread thread : this.threads) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Method that runs on every thread of the stage and processes the events
+     * in the order they were submitted
+     */
+    private void processEvents() {
+        long[] putAtNanos = new long[1];
+        while (true) {
+            E event;
+            try {
+                event = this.ringBuffer.take(putAtNanos);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long startNanos = System.nanoTime();
+            try {
+                process(event);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            recordEvent(startNanos - putAtNanos[0], System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Method that updates the metrics with a processed event
+     *
+     * @param queueWaitNanos how long the event waited in the ring buffer
+     * @param processingNanos how long processing the event took
+     */
+    private synchronized void recordEvent(long queueWaitNanos, long processingNanos) {
+        this.averageQueueWait.record(queueWaitNanos / 1_000_000.0);
+        this.averageProcessingTime.record(processingNanos / 1_000_000.0);
+        this.processed++;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Method that returns the number of events waiting in the stage
+     *
+     * @return the depth of the ring buffer
+     */
+    public int getQueueDepth() {
+        return this.ringBuffer.size();
+    }
+
+    /**
+     * Method that returns the number of events that can wait in the stage
+     *
+     * @return the capacity of the ring buffer
+     */
+    public int getCapacity() {
+        return this.ringBuffer.capacity();
+    }
+
+    /**
+     * Method that returns the number of events the stage processed
+     *
+     * @return the number of processed events
+     */
+    public synchronized long getProcessed() {
+        return this.processed;
+    }
+
+    /**
+     * Method that returns the moving average time events waited in the stage
+     *
+     * @return the average queue wait in milliseconds
+     */
+    public synchronized double getAverageQueueWait() {
+        return this.averageQueueWait.get();
+    }
+
+    /**
+     * Method that returns the moving average time processing an event took
+     *
+     * @return the average processing time in milliseconds
+     */
+    public synchronized double getAverageProcessingTime() {
+        return this.averageProcessingTime.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: depth %d/%d, processed %d, queue wait %.2f ms, processing %.2f ms",
+                this.name,
+                getQueueDepth(),
+                getCapacity(),
+                getProcessed(),
+                getAverageQueueWait(),
+                getAverageProcessingTime());
+    }
+
+    /**
+     * Callback that needs to be implemented when creating an instance of this class
+     * that processes an event on one of the threads of the stage
+     *
+     * @param event the event to process
+     */
+    public void process(E event) {}
+}
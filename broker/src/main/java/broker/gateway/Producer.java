@@ -2,6 +2,9 @@ package broker.gateway;
 
 import com.google.gson.Gson;
 
+import model.messaging.JmsProvider;
+import model.serialization.MessageBodyCodec;
+
 import javax.jms.*;
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -14,11 +17,6 @@ import java.util.Properties;
  */
 public class Producer {
 
-    /**
-     * String that holds the JMS provider url
-     */
-    private static final String JMS_CONNECTION = "tcp://localhost:61616";
-
     /**
      * Declare variable that will hold the objects necessary
      * for making the connection to JMS, creating JMS messages
@@ -33,14 +31,17 @@ public class Producer {
      * Constructor that initializes the connection,
      * the session, the destination and an empty producer
      * that will sendMessage messages with a given queueName later on
+     *
+     * @throws JMSException if the JMS broker cannot be reached within the timeout of the JMS provider url
+     *                      or something else goes wrong with JMS
      */
-    public Producer() {
+    public Producer() throws JMSException {
         try {
             // set properties
             Properties props = new Properties();
             props.setProperty(Context.INITIAL_CONTEXT_FACTORY,
                     "org.apache.activemq.jndi.ActiveMQInitialContextFactory");
-            props.setProperty(Context.PROVIDER_URL, JMS_CONNECTION);
+            props.setProperty(Context.PROVIDER_URL, JmsProvider.getProviderUrl());
 
             // create connection and session
             Context jndiContext = new InitialContext(props);
@@ -52,8 +53,14 @@ public class Producer {
             // create an empty producer
             this.producer = this.session.createProducer(null);
 
-        } catch (JMSException | NamingException e) {
-            e.printStackTrace();
+        } catch (JMSException e) {
+            closeAfterFailedSetup();
+            throw e;
+        } catch (NamingException e) {
+            closeAfterFailedSetup();
+            JMSException jmsException = new JMSException("JMS provider cannot be looked up: " + e.getMessage());
+            jmsException.setLinkedException(e);
+            throw jmsException;
         }
     }
 
@@ -64,14 +71,16 @@ public class Producer {
      *
      * @param queueName String that holds the queue name of the queue
      *                  which the Producer is going to communicate with
+     * @throws JMSException if the JMS broker cannot be reached within the timeout of the JMS provider url
+     *                      or something else goes wrong with JMS
      */
-    public Producer(String queueName) {
+    public Producer(String queueName) throws JMSException {
         try {
             // set properties
             Properties props = new Properties();
             props.setProperty(Context.INITIAL_CONTEXT_FACTORY,
                     "org.apache.activemq.jndi.ActiveMQInitialContextFactory");
-            props.setProperty(Context.PROVIDER_URL, JMS_CONNECTION);
+            props.setProperty(Context.PROVIDER_URL, JmsProvider.getProviderUrl());
             props.put(("queue." + queueName), queueName);
 
             // create connection and session
@@ -84,8 +93,14 @@ public class Producer {
             // create brokerDestination and producer
             this.destination = (Destination) jndiContext.lookup(queueName);
             this.producer = session.createProducer(this.destination);
-        } catch (JMSException | NamingException e) {
-            e.printStackTrace();
+        } catch (JMSException e) {
+            closeAfterFailedSetup();
+            throw e;
+        } catch (NamingException e) {
+            closeAfterFailedSetup();
+            JMSException jmsException = new JMSException("JMS provider cannot be looked up: " + e.getMessage());
+            jmsException.setLinkedException(e);
+            throw jmsException;
         }
     }
 
@@ -101,6 +116,40 @@ public class Producer {
         return this.session.createTextMessage(messageBody);
     }
 
+    /**
+     * Method that creates the JMS message containing a given message body,
+     * which is compressed into a BytesMessage with a codec property
+     * when it is longer than the compression threshold
+     *
+     * @param messageBody String contents to be wrapped with a JMS message
+     * @param compressionThreshold the length from which the body is compressed, negative to never compress
+     * @return Message object containing the (compressed) message body
+     * @throws JMSException if something goes wrong with JMS
+     */
+    public Message createMessage(String messageBody, int compressionThreshold) throws JMSException {
+        if (compressionThreshold < 0 || messageBody.length() < compressionThreshold) {
+            return createMessage(messageBody);
+        }
+        BytesMessage message = this.session.createBytesMessage();
+        message.writeBytes(MessageBodyCodec.compress(messageBody));
+        message.setStringProperty(MessageBodyCodec.CODEC_PROPERTY, MessageBodyCodec.DEFLATE_CODEC);
+        return message;
+    }
+
+    /**
+     * Method that creates the JMS message containing
+     * a given message body as raw bytes
+     *
+     * @param messageBody bytes to be wrapped with a JMS message
+     * @return Message object containing the message body
+     * @throws JMSException if something goes wrong with JMS
+     */
+    public Message createMessage(byte[] messageBody) throws JMSException {
+        BytesMessage message = this.session.createBytesMessage();
+        message.writeBytes(messageBody);
+        return message;
+    }
+
     /**
      * Method that sends a given message to the
      * queue destination initialized in the constructor
@@ -108,7 +157,7 @@ public class Producer {
      * @param message to be sendMessage
      * @throws JMSException if something goes wrong with JMS
      */
-    public void sendMessage(Message message) throws JMSException {
+    public synchronized void sendMessage(Message message) throws JMSException {
         this.producer.send(message);
     }
 
@@ -121,11 +170,66 @@ public class Producer {
      * @param queueName
      * @throws JMSException if something goes wrong with JMS
      */
-    public void sendMessage(Message message, String queueName) throws JMSException {
+    public synchronized void sendMessage(Message message, String queueName) throws JMSException {
         this.producer.send(this.session.createQueue(queueName), message);
     }
 
-    public void sendMessage(Message message, Destination destination) throws JMSException {
+    public synchronized void sendMessage(Message message, Destination destination) throws JMSException {
         this.producer.send(destination, message);
     }
+
+    /**
+     * Method that sends a given message with a given JMSPriority to a
+     * destination created from the passed as a parameter queue name
+     *
+     * @param message to be sendMessage
+     * @param queueName the name of the queue, or of several queues separated by commas
+     * @param priority the JMSPriority between 0 and 9
+     * @throws JMSException if something goes wrong with JMS
+     */
+    public synchronized void sendMessage(Message message, String queueName, int priority) throws JMSException {
+        sendMessage(message, this.session.createQueue(queueName), priority);
+    }
+
+    /**
+     * Method that sends a given message with a given JMSPriority to a destination
+     *
+     * @param message to be sendMessage
+     * @param destination where the message is sent to
+     * @param priority the JMSPriority between 0 and 9
+     * @throws JMSException if something goes wrong with JMS
+     */
+    public synchronized void sendMessage(Message message, Destination destination, int priority)
+            throws JMSException {
+        this.producer.send(
+                destination,
+                message,
+                this.producer.getDeliveryMode(),
+                priority,
+                this.producer.getTimeToLive());
+    }
+
+    /**
+     * Method that closes the connection and with it the session and the producer
+     */
+    public void close() {
+        try {
+            this.connection.close();
+        } catch (JMSException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Method that closes the connection after its setup failed,
+     * otherwise the failover transport keeps reconnecting in the background
+     */
+    private void closeAfterFailedSetup() {
+        if (this.connection == null) return;
+        try {
+            this.connection.close();
+        } catch (JMSException e) {
+            // the setup already failed, its exception is the one that is thrown
+        }
+    }
 }
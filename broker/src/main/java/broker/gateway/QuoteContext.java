@@ -0,0 +1,107 @@
+package broker.gateway;
+
+import model.client.QuotePriority;
+import model.client.TreatmentCostsRequest;
+
+import javax.jms.Destination;
+
+/**
+ * A class that holds everything the broker needs to know about a quote
+ * from the moment its TreatmentCostsRequest arrives until the reply is sent
+ */
+public final class QuoteContext {
+
+    /**
+     * Store the ID of the quote, which is also the aggregationId of its hospital requests
+     */
+    private final long quoteId;
+
+    /**
+     * Store the original request and where and with which correlation ID the reply goes
+     */
+    private final TreatmentCostsRequest treatmentCostsRequest;
+    private final String correlationId;
+    private final Destination replyDestination;
+
+    /**
+     * Store the lane of the client that sent the request and the priority class of the quote
+     */
+    private final String clientLane;
+    private final QuotePriority priority;
+
+    /**
+     * Store when the request arrived and when the quote has to be answered
+     */
+    private final long receivedAt;
+    private final long deadline;
+
+    /**
+     * Constructor that sets all properties
+     *
+     * @param quoteId the ID of the quote
+     * @param treatmentCostsRequest the original request
+     * @param correlationId the JMSCorrelationID of the request, or its JMSMessageID if it has none,
+     *                      used as JMSCorrelationID of the reply
+     * @param replyDestination the JMSReplyTo of the request
+     * @param clientLane the lane of the client that sent the request
+     * @param priority the priority class of the quote
+     * @param receivedAt the time the request arrived in milliseconds
+     * @param deadline the time the quote has to be answered in milliseconds
+     */
+    public QuoteContext(
+            long quoteId,
+            TreatmentCostsRequest treatmentCostsRequest,
+            String correlationId,
+            Destination replyDestination,
+            String clientLane,
+            QuotePriority priority,
+            long receivedAt,
+            long deadline
+    ) {
+        this.quoteId = quoteId;
+        this.treatmentCostsRequest = treatmentCostsRequest;
+        this.correlationId = correlationId;
+        this.replyDestination = replyDestination;
+        this.clientLane = clientLane;
+        this.priority = priority;
+        this.receivedAt = receivedAt;
+        this.deadline = deadline;
+    }
+
+    public long getQuoteId() {
+        return quoteId;
+    }
+
+    public TreatmentCostsRequest getTreatmentCostsRequest() {
+        return treatmentCostsRequest;
+    }
+
+    public String getCorrelationId() {
+        return correlationId;
+    }
+
+    public Destination getReplyDestination() {
+        return replyDestination;
+    }
+
+    public String getClientLane() {
+        return clientLane;
+    }
+
+    public QuotePriority getPriority() {
+        return priority;
+    }
+
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + quoteId + "]-" + treatmentCostsRequest;
+    }
+}
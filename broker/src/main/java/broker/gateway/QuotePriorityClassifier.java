@@ -0,0 +1,57 @@
+package broker.gateway;
+
+import model.client.QuotePriority;
+import model.client.TreatmentCostsRequest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A class responsible for finding the priority class of a TreatmentCostsRequest.
+ * A priority class the insurance client set on the request is kept, otherwise the
+ * longest treatment code prefix with a rule decides, otherwise the request is NORMAL.
+ */
+public class QuotePriorityClassifier {
+
+    /**
+     * Map the treatment code prefix to the priority class of the requests with that prefix
+     */
+    private final Map<String, QuotePriority> treatmentCodePrefixToPriorityMap;
+
+    /**
+     * Store the length of the longest prefix, no longer prefixes have to be looked up
+     */
+    private final int maxPrefixLength;
+
+    /**
+     * Constructor that sets the rules
+     *
+     * @param treatmentCodePrefixToPriorityMap the priority class of every treatment code prefix
+     */
+    public QuotePriorityClassifier(Map<String, QuotePriority> treatmentCodePrefixToPriorityMap) {
+        this.treatmentCodePrefixToPriorityMap = new HashMap<>(treatmentCodePrefixToPriorityMap);
+        int longestPrefix = 0;
+        for (String prefix : this.treatmentCodePrefixToPriorityMap.keySet()) {
+            longestPrefix = Math.max(longestPrefix, prefix.length());
+        }
+        this.maxPrefixLength = longestPrefix;
+    }
+
+    /**
+     * Method that finds the priority class of a request
+     *
+     * @param treatmentCostsRequest the request to classify
+     * @return QuotePriority of the request
+     */
+    public QuotePriority classify(TreatmentCostsRequest treatmentCostsRequest) {
+        if (treatmentCostsRequest.getPriority() != null) return treatmentCostsRequest.getPriority();
+        String treatmentCode = treatmentCostsRequest.getTreatmentCode();
+        if (treatmentCode == null) return QuotePriority.NORMAL;
+        // look up the longest prefix first
+        for (int length = Math.min(treatmentCode.length(), this.maxPrefixLength); length >= 0; length--) {
+            QuotePriority priority = this.treatmentCodePrefixToPriorityMap.get(treatmentCode.substring(0, length));
+            if (priority != null) return priority;
+        }
+        return QuotePriority.NORMAL;
+    }
+}
@@ -0,0 +1,129 @@
+package broker.gateway;
+
+import model.client.QuotePriority;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A class responsible for keeping track of the latency of the quotes of every
+ * priority class and how many of them were answered within the SLO of their class
+ */
+public class QuoteSloMonitor {
+
+    /**
+     * Map the priority class to its SLO in milliseconds and to its statistics
+     */
+    private Map<QuotePriority, Long> priorityToSloMillisMap;
+    private Map<QuotePriority, SloStatistics> priorityToStatisticsMap;
+
+    /**
+     * Constructor that sets the SLO of every priority class
+     *
+     * @param priorityToSloMillisMap the time in milliseconds within which a quote of a class has to be answered
+     * @throws IllegalArgumentException if a priority class has no SLO
+     */
+    public QuoteSloMonitor(Map<QuotePriority, Long> priorityToSloMillisMap) throws IllegalArgumentException {
+        this.priorityToSloMillisMap = new EnumMap<>(QuotePriority.class);
+        this.priorityToStatisticsMap = new EnumMap<>(QuotePriority.class);
+        for (QuotePriority priority : QuotePriority.values()) {
+            Long sloMillis = priorityToSloMillisMap.get(priority);
+            if (sloMillis == null) {
+                throw new IllegalArgumentException("Priority class " + priority + " has no SLO.");
+            }
+            this.priorityToSloMillisMap.put(priority, sloMillis);
+            this.priorityToStatisticsMap.put(priority, new SloStatistics());
+        }
+    }
+
+    /**
+     * Method that returns the SLO of a priority class
+     *
+     * @param priority the priority class
+     * @return the SLO in milliseconds
+     */
+    public long getSloMillis(QuotePriority priority) {
+        return this.priorityToSloMillisMap.get(priority);
+    }
+
+    /**
+     * Method that registers a quote that was answered or released.
+     * A quote that was released without reply always violates its SLO.
+     *
+     * @param priority the priority class of the quote
+     * @param latencyMillis the time between the arrival of the request and its reply in milliseconds
+     * @param answered true if the quote was answered, false if it was released without reply
+     */
+    public synchronized void quoteCompleted(QuotePriority priority, long latencyMillis, boolean answered) {
+        SloStatistics statistics = this.priorityToStatisticsMap.get(priority);
+        statistics.averageLatency.record(latencyMillis);
+        statistics.latencySamples.record(latencyMillis);
+        statistics.completed++;
+        if (!answered || latencyMillis > this.priorityToSloMillisMap.get(priority)) {
+            statistics.violations++;
+        }
+    }
+
+    /**
+     * Method that returns the number of quotes of a priority class that were answered or released
+     *
+     * @param priority the priority class
+     * @return the number of completed quotes
+     */
+    public synchronized long getCompleted(QuotePriority priority) {
+        return this.priorityToStatisticsMap.get(priority).completed;
+    }
+
+    /**
+     * Method that returns the number of quotes of a priority class that violated the SLO
+     *
+     * @param priority the priority class
+     * @return the number of quotes answered too late or not at all
+     */
+    public synchronized long getViolations(QuotePriority priority) {
+        return this.priorityToStatisticsMap.get(priority).violations;
+    }
+
+    /**
+     * Method that returns the share of the quotes of a priority class that met the SLO
+     *
+     * @param priority the priority class
+     * @return the attainment between 0 and 1, or 1 if no quote completed yet
+     */
+    public synchronized double getAttainment(QuotePriority priority) {
+        SloStatistics statistics = this.priorityToStatisticsMap.get(priority);
+        if (statistics.completed == 0) return 1;
+        return 1 - (double) statistics.violations / statistics.completed;
+    }
+
+    /**
+     * Method that returns the moving average latency of a priority class
+     *
+     * @param priority the priority class
+     * @return the average latency in milliseconds
+     */
+    public synchronized double getAverageLatency(QuotePriority priority) {
+        return this.priorityToStatisticsMap.get(priority).averageLatency.get();
+    }
+
+    /**
+     * Method that returns a percentile of the recent latencies of a priority class
+     *
+     * @param priority the priority class
+     * @param percentile the percentile between 0 and 1, e.g. 0.95
+     * @return the latency in milliseconds, or -1 if no quote completed yet
+     */
+    public synchronized long getLatencyPercentile(QuotePriority priority, double percentile) {
+        return this.priorityToStatisticsMap.get(priority).latencySamples.getPercentile(percentile);
+    }
+
+    /**
+     * Statistics that are kept for a single priority class
+     */
+    private static class SloStatistics {
+        private long completed;
+        private long violations;
+        private final MovingAverage averageLatency = new MovingAverage();
+        private final LatencySamples latencySamples = new LatencySamples();
+    }
+}
@@ -1,8 +1,9 @@
 package broker.gateway;
 
-import broker.model.client.TreatmentCostsReply;
-import broker.model.client.TreatmentCostsRequest;
 import com.google.gson.Gson;
+import model.client.TreatmentCostsReply;
+import model.client.TreatmentCostsRequest;
+import model.serialization.ModelSerializer;
 
 /**
  * A class that is responsible for serializing to a JSON string and
@@ -14,10 +15,11 @@ public class TreatmentCostsSerializer {
     private Gson serializer;
 
     /**
-     * Constructor that initializes the Gson object
+     * Constructor that uses the Gson object shared by all gateways,
+     * which (de)serializes the model classes without reflection
      */
     public TreatmentCostsSerializer() {
-        this.serializer = new Gson();
+        this.serializer = ModelSerializer.getGson();
     }
 
     /**
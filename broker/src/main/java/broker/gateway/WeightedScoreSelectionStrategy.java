@@ -0,0 +1,45 @@
+package broker.gateway;
+
+import model.hospital.HospitalCostsReply;
+
+/**
+ * A HospitalReplySelectionStrategy that weighs the price of a reply against
+ * how fast the hospital usually replies, so a slightly more expensive but
+ * much more responsive hospital can be preferred
+ */
+public class WeightedScoreSelectionStrategy implements HospitalReplySelectionStrategy {
+
+    /**
+     * Store the weight of the price and the weight of a millisecond of average latency
+     */
+    private final double priceWeight;
+    private final double latencyWeight;
+
+    /**
+     * Declare the monitor that provides the average latency of every hospital
+     */
+    private final HospitalPerformanceMonitor hospitalPerformanceMonitor;
+
+    /**
+     * Constructor that sets the weights and the monitor
+     *
+     * @param priceWeight the weight of the price
+     * @param latencyWeight the weight of a millisecond of average reply latency
+     * @param hospitalPerformanceMonitor the monitor that keeps the latency of every hospital
+     */
+    public WeightedScoreSelectionStrategy(
+            double priceWeight,
+            double latencyWeight,
+            HospitalPerformanceMonitor hospitalPerformanceMonitor
+    ) {
+        this.priceWeight = priceWeight;
+        this.latencyWeight = latencyWeight;
+        this.hospitalPerformanceMonitor = hospitalPerformanceMonitor;
+    }
+
+    @Override
+    public double score(HospitalCostsReply hospitalCostsReply, String hospitalQueueName) {
+        return this.priceWeight * hospitalCostsReply.getPrice()
+                + this.latencyWeight * this.hospitalPerformanceMonitor.getAverageLatency(hospitalQueueName);
+    }
+}
@@ -0,0 +1,236 @@
+package broker.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A hash map with primitive long keys that uses open addressing with linear probing,
+ * so that no key is boxed and no entry object is allocated per mapping.
+ * This class is not thread safe.
+ *
+ * @param <V> the type of the values
+ */
+public class LongObjectHashMap<V> {
+
+    /**
+     * Store the default capacity and the maximum fill ratio before the table grows
+     */
+    private static final int DEFAULT_CAPACITY = 64;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    /**
+     * Declare the tables of keys and values, a null value marks an empty slot
+     */
+    private long[] keys;
+    private Object[] values;
+
+    /**
+     * Store the number of mappings, the mask for the table index and when to grow
+     */
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    /**
+     * Constructor that creates a map with the default capacity
+     */
+    public LongObjectHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor that creates a map that holds the given number of mappings without growing
+     *
+     * @param expectedSize the number of mappings expected
+     */
+    public LongObjectHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Method that returns the value mapped to a key
+     *
+     * @param key the key to look up
+     * @return the value, or null if the key is not mapped
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int index = indexOf(key);
+        return index < 0 ? null : (V) this.values[index];
+    }
+
+    /**
+     * Method that checks if a key is mapped
+     *
+     * @param key the key to look up
+     * @return true if the key is mapped, otherwise false
+     */
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Method that maps a key to a value
+     *
+     * @param key the key
+     * @param value the value, which cannot be null
+     * @return the previous value, or null if the key was not mapped
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) throw new IllegalArgumentException("Value cannot be null.");
+        int index = hash(key) & this.mask;
+        while (this.values[index] != null) {
+            if (this.keys[index] == key) {
+                V previous = (V) this.values[index];
+                this.values[index] = value;
+                return previous;
+            }
+            index = (index + 1) & this.mask;
+        }
+        this.keys[index] = key;
+        this.values[index] = value;
+        if (++this.size > this.resizeThreshold) {
+            resize(this.keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Method that removes the mapping of a key
+     *
+     * @param key the key
+     * @return the removed value, or null if the key was not mapped
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int index = indexOf(key);
+        if (index < 0) return null;
+        V previous = (V) this.values[index];
+        this.values[index] = null;
+        this.size--;
+        closeGap(index);
+        return previous;
+    }
+
+    /**
+     * Method that returns the number of mappings
+     *
+     * @return the number of mappings
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Method that checks if there are no mappings
+     *
+     * @return true if there are no mappings, otherwise false
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Method that returns the values of all mappings
+     *
+     * @return List with a copy of the values, in no particular order
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> values = new ArrayList<>(this.size);
+        for (Object value : this.values) {
+            if (value != null) values.add((V) value);
+        }
+        return values;
+    }
+
+    /**
+     * Method that removes all mappings
+     */
+    public void clear() {
+        Arrays.fill(this.values, null);
+        this.size = 0;
+    }
+
+    /**
+     * Method that finds the slot of a key
+     *
+     * @param key the key to look up
+     * @return the index of the slot, or -1 if the key is not mapped
+     */
+    private int indexOf(long key) {
+        int index = hash(key) & this.mask;
+        while (this.values[index] != null) {
+            if (this.keys[index] == key) return index;
+            index = (index + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Method that shifts back the entries after a removed slot, so that
+     * no probe sequence is broken and no tombstones are needed
+     *
+     * @param gap the index of the slot that was emptied
+     */
+    private void closeGap(int gap) {
+        int index = (gap + 1) & this.mask;
+        while (this.values[index] != null) {
+            int home = hash(this.keys[index]) & this.mask;
+            // move the entry if its home slot is not between the gap and its current slot
+            if (((index - home) & this.mask) >= ((index - gap) & this.mask)) {
+                this.keys[gap] = this.keys[index];
+                this.values[gap] = this.values[index];
+                this.values[index] = null;
+                gap = index;
+            }
+            index = (index + 1) & this.mask;
+        }
+    }
+
+    /**
+     * Method that moves all entries to tables of a new capacity
+     *
+     * @param capacity the new capacity, a power of two
+     */
+    private void resize(int capacity) {
+        long[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == null) continue;
+            int index = hash(oldKeys[i]) & this.mask;
+            while (this.values[index] != null) {
+                index = (index + 1) & this.mask;
+            }
+            this.keys[index] = oldKeys[i];
+            this.values[index] = oldValues[i];
+        }
+    }
+
+    /**
+     * Method that allocates empty tables
+     *
+     * @param capacity the capacity, a power of two
+     */
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        this.resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Method that spreads the bits of a key, sequential IDs would otherwise cluster
+     *
+     * @param key the key
+     * @return the hash of the key
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
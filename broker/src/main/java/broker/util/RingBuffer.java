@@ -0,0 +1,100 @@
+package broker.util;
+
+/**
+ * A bounded blocking queue on a ring of slots that are allocated once, together with
+ * the time every element was put, so that no node object is allocated per element.
+ * Putting blocks while the ring is full, taking blocks while it is empty.
+ * This class is thread safe for any number of producers and consumers.
+ *
+ * @param <E> the type of the elements
+ */
+public class RingBuffer<E> {
+
+    /**
+     * Declare the slots of the elements and of the times they were put in nanoseconds
+     */
+    private final Object[] elements;
+    private final long[] putAtNanos;
+
+    /**
+     * Store the mask for the slot index, the sequence of the next element to take
+     * and the sequence of the next element to put, the difference is the size
+     */
+    private final int mask;
+    private long takeSequence;
+    private long putSequence;
+
+    /**
+     * Constructor that allocates the slots
+     *
+     * @param capacity the number of slots, rounded up to a power of two
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    public RingBuffer(int capacity) throws IllegalArgumentException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity of a ring buffer has to be positive.");
+        }
+        int slots = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.elements = new Object[slots];
+        this.putAtNanos = new long[slots];
+        this.mask = slots - 1;
+    }
+
+    /**
+     * Method that puts an element, waiting for a free slot while the ring is full
+     *
+     * @param element the element to put, not null
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public synchronized void put(E element) throws InterruptedException {
+        while (this.putSequence - this.takeSequence == this.elements.length) {
+            wait();
+        }
+        int index = (int) (this.putSequence & this.mask);
+        this.elements[index] = element;
+        this.putAtNanos[index] = System.nanoTime();
+        this.putSequence++;
+        notifyAll();
+    }
+
+    /**
+     * Method that takes the oldest element, waiting while the ring is empty
+     *
+     * @param putAtNanos an array whose first item is set to the System.nanoTime() at which
+     *                   the element was put, or null if that is not needed
+     * @return the oldest element
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized E take(long[] putAtNanos) throws InterruptedException {
+        while (this.putSequence == this.takeSequence) {
+            wait();
+        }
+        int index = (int) (this.takeSequence & this.mask);
+        E element = (E) this.elements[index];
+        // release the element, the slot itself is reused
+        this.elements[index] = null;
+        if (putAtNanos != null) putAtNanos[0] = this.putAtNanos[index];
+        this.takeSequence++;
+        notifyAll();
+        return element;
+    }
+
+    /**
+     * Method that returns the number of elements in the ring
+     *
+     * @return the number of elements waiting to be taken
+     */
+    public synchronized int size() {
+        return (int) (this.putSequence - this.takeSequence);
+    }
+
+    /**
+     * Method that returns the number of slots
+     *
+     * @return the capacity of the ring
+     */
+    public int capacity() {
+        return this.elements.length;
+    }
+}
@@ -0,0 +1,55 @@
+package broker.gateway;
+
+import model.hospital.HospitalCostsReply;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests of MinPriceSelectionStrategy, on its own and in a HospitalReplyAggregator
+ */
+public class MinPriceSelectionStrategyTest {
+
+    private final MinPriceSelectionStrategy strategy = new MinPriceSelectionStrategy();
+
+    @Test
+    public void scoreIsThePrice() {
+        assertEquals(120.5, this.strategy.score(new HospitalCostsReply(120.5, "Catharina", null), "catharina"), 0);
+    }
+
+    @Test
+    public void lowestPriceWins() {
+        HospitalCostsReply cheapest = new HospitalCostsReply(80, "Maxima", null);
+        assertSame(cheapest, selectBest(
+                new HospitalCostsReply(100, "Catharina", null),
+                cheapest,
+                new HospitalCostsReply(90, "UMC", null)));
+    }
+
+    @Test
+    public void tieKeepsTheFirstReply() {
+        HospitalCostsReply first = new HospitalCostsReply(100, "Catharina", null);
+        assertSame(first, selectBest(first, new HospitalCostsReply(100, "Maxima", null)));
+    }
+
+    /**
+     * Method that aggregates the replies in the given order, every reply from another hospital
+     *
+     * @param hospitalCostsReplies the replies of the aggregation
+     * @return the best HospitalCostsReply of the aggregation
+     */
+    private HospitalCostsReply selectBest(HospitalCostsReply... hospitalCostsReplies) {
+        HospitalCostsReply[] bestReply = new HospitalCostsReply[1];
+        HospitalReplyAggregator hospitalReplyAggregator = new HospitalReplyAggregator(this.strategy) {
+            public void onAllHospitalCostsRepliesReceived(HospitalCostsReply hospitalCostsReply, long aggregationId) {
+                bestReply[0] = hospitalCostsReply;
+            }
+        };
+        hospitalReplyAggregator.createAggregation(1, hospitalCostsReplies.length);
+        for (int i = 0; i < hospitalCostsReplies.length; i++) {
+            hospitalReplyAggregator.newHospitalCostsReplyReceived(hospitalCostsReplies[i], 1, "c" + i, "queue" + i);
+        }
+        return bestReply[0];
+    }
+}
@@ -0,0 +1,92 @@
+package broker.gateway;
+
+import model.hospital.HospitalCostsReply;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests of MinTotalCostSelectionStrategy, on its own and in a HospitalReplyAggregator
+ */
+public class MinTotalCostSelectionStrategyTest {
+
+    @Test
+    public void additionalCostsAreAddedToThePrice() {
+        MinTotalCostSelectionStrategy strategy = createStrategy("Catharina", 15.0);
+        assertEquals(115.0, strategy.score(new HospitalCostsReply(100, "Catharina", null), "catharina"), 0);
+    }
+
+    @Test
+    public void hospitalWithoutAdditionalCostsScoresItsPrice() {
+        MinTotalCostSelectionStrategy strategy = createStrategy("Catharina", 15.0);
+        assertEquals(100.0, strategy.score(new HospitalCostsReply(100, "Maxima", null), "maxima"), 0);
+        assertEquals(100.0, strategy.score(new HospitalCostsReply(100, null, null), "unknown"), 0);
+    }
+
+    @Test
+    public void additionalCostsCanOutweighALowerPrice() {
+        HospitalCostsReply cheaperInTotal = new HospitalCostsReply(100, "Maxima", null);
+        assertSame(cheaperInTotal, selectBest(
+                createStrategy("Catharina", 30.0),
+                new HospitalCostsReply(90, "Catharina", null),
+                cheaperInTotal));
+    }
+
+    @Test
+    public void tieKeepsTheFirstReply() {
+        HospitalCostsReply first = new HospitalCostsReply(90, "Catharina", null);
+        assertSame(first, selectBest(
+                createStrategy("Catharina", 10.0),
+                first,
+                new HospitalCostsReply(100, "Maxima", null)));
+    }
+
+    @Test
+    public void laterChangesToTheGivenMapAreIgnored() {
+        Map<String, Double> hospitalNameToAdditionalCostsMap = new HashMap<>();
+        MinTotalCostSelectionStrategy strategy = new MinTotalCostSelectionStrategy(hospitalNameToAdditionalCostsMap);
+        hospitalNameToAdditionalCostsMap.put("Catharina", 15.0);
+        assertEquals(100.0, strategy.score(new HospitalCostsReply(100, "Catharina", null), "catharina"), 0);
+    }
+
+    /**
+     * Method that creates the strategy with additional costs for a single hospital
+     *
+     * @param hospitalName the name of the hospital
+     * @param additionalCosts the costs added to its price
+     * @return MinTotalCostSelectionStrategy with the additional costs
+     */
+    private static MinTotalCostSelectionStrategy createStrategy(String hospitalName, double additionalCosts) {
+        Map<String, Double> hospitalNameToAdditionalCostsMap = new HashMap<>();
+        hospitalNameToAdditionalCostsMap.put(hospitalName, additionalCosts);
+        return new MinTotalCostSelectionStrategy(hospitalNameToAdditionalCostsMap);
+    }
+
+    /**
+     * Method that aggregates the replies in the given order, every reply from another hospital
+     *
+     * @param strategy the strategy that selects the best reply
+     * @param hospitalCostsReplies the replies of the aggregation
+     * @return the best HospitalCostsReply of the aggregation
+     */
+    private static HospitalCostsReply selectBest(
+            HospitalReplySelectionStrategy strategy,
+            HospitalCostsReply... hospitalCostsReplies
+    ) {
+        HospitalCostsReply[] bestReply = new HospitalCostsReply[1];
+        HospitalReplyAggregator hospitalReplyAggregator = new HospitalReplyAggregator(strategy) {
+            public void onAllHospitalCostsRepliesReceived(HospitalCostsReply hospitalCostsReply, long aggregationId) {
+                bestReply[0] = hospitalCostsReply;
+            }
+        };
+        hospitalReplyAggregator.createAggregation(1, hospitalCostsReplies.length);
+        for (int i = 0; i < hospitalCostsReplies.length; i++) {
+            hospitalReplyAggregator.newHospitalCostsReplyReceived(hospitalCostsReplies[i], 1, "c" + i, "queue" + i);
+        }
+        return bestReply[0];
+    }
+}
@@ -0,0 +1,60 @@
+package broker.gateway;
+
+import model.hospital.HospitalCostsReply;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of WeightedScoreSelectionStrategy, on its own and in a HospitalReplyAggregator
+ */
+public class WeightedScoreSelectionStrategyTest {
+
+    /**
+     * Store the weights of the strategy under test
+     */
+    private static final double PRICE_WEIGHT = 2;
+    private static final double LATENCY_WEIGHT = 0.5;
+
+    private HospitalPerformanceMonitor hospitalPerformanceMonitor;
+    private WeightedScoreSelectionStrategy strategy;
+
+    @Before
+    public void setUp() {
+        this.hospitalPerformanceMonitor = new HospitalPerformanceMonitor();
+        this.strategy = new WeightedScoreSelectionStrategy(PRICE_WEIGHT, LATENCY_WEIGHT, this.hospitalPerformanceMonitor);
+    }
+
+    @Test
+    public void withoutRecordedLatencyOnlyThePriceCounts() {
+        assertEquals(200.0, this.strategy.score(new HospitalCostsReply(100, "Catharina", null), "catharina"), 0);
+    }
+
+    @Test
+    public void recordedLatencyIsAddedToTheScore() throws InterruptedException {
+        this.hospitalPerformanceMonitor.requestSent("catharina", "c1");
+        Thread.sleep(20);
+        this.hospitalPerformanceMonitor.replyReceived("catharina", "c1");
+        double score = this.strategy.score(new HospitalCostsReply(100, "Catharina", null), "catharina");
+        assertTrue("score " + score, score >= PRICE_WEIGHT * 100 + LATENCY_WEIGHT * 20);
+    }
+
+    @Test
+    public void tieKeepsTheFirstReply() {
+        HospitalCostsReply first = new HospitalCostsReply(100, "Catharina", null);
+        HospitalCostsReply[] bestReply = new HospitalCostsReply[1];
+        HospitalReplyAggregator hospitalReplyAggregator = new HospitalReplyAggregator(this.strategy) {
+            public void onAllHospitalCostsRepliesReceived(HospitalCostsReply hospitalCostsReply, long aggregationId) {
+                bestReply[0] = hospitalCostsReply;
+            }
+        };
+        hospitalReplyAggregator.createAggregation(1, 2);
+        hospitalReplyAggregator.newHospitalCostsReplyReceived(first, 1, "c1", "catharina");
+        hospitalReplyAggregator.newHospitalCostsReplyReceived(
+                new HospitalCostsReply(100, "Maxima", null), 1, "c2", "maxima");
+        assertSame(first, bestReply[0]);
+    }
+}
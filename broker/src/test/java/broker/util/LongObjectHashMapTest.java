@@ -0,0 +1,154 @@
+package broker.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that compare LongObjectHashMap with a HashMap under the same operations
+ */
+public class LongObjectHashMapTest {
+
+    /**
+     * Store the seed of the random operations, so that a failure can be reproduced
+     */
+    private static final long SEED = 42L;
+
+    @Test
+    public void randomPutAndRemoveMatchHashMap() {
+        Random random = new Random(SEED);
+        // a small key range makes keys collide, so removals shift back probe sequences that wrap around
+        LongObjectHashMap<String> map = new LongObjectHashMap<>(4);
+        Map<Long, String> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(64);
+            if (random.nextBoolean()) {
+                String value = "value" + i;
+                assertEquals("put " + key, expected.put(key, value), map.put(key, value));
+            } else {
+                assertEquals("remove " + key, expected.remove(key), map.remove(key));
+            }
+            assertEquals(expected.size(), map.size());
+            if (i % 1_000 == 0) {
+                assertSameMappings(expected, map, 64);
+            }
+        }
+        assertSameMappings(expected, map, 64);
+    }
+
+    @Test
+    public void removeKeepsCollidingKeysReachable() {
+        Random random = new Random(SEED);
+        LongObjectHashMap<Long> map = new LongObjectHashMap<>(16);
+        Map<Long, Long> expected = new HashMap<>();
+        // fill up to the load factor, so that long probe sequences form before any removal
+        for (int i = 0; i < 16; i++) {
+            long key = random.nextLong();
+            map.put(key, key);
+            expected.put(key, key);
+        }
+        List<Long> keys = new ArrayList<>(expected.keySet());
+        for (Long key : keys) {
+            assertEquals(key, map.remove(key));
+            expected.remove(key);
+            for (Long remainingKey : expected.keySet()) {
+                assertEquals(remainingKey, map.get(remainingKey));
+            }
+        }
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void resizeKeepsAllMappings() {
+        LongObjectHashMap<Long> map = new LongObjectHashMap<>(1);
+        Map<Long, Long> expected = new HashMap<>();
+        // sequential IDs, as quote and aggregation IDs are, through many resizes
+        for (long key = 0; key < 100_000; key++) {
+            map.put(key, key);
+            expected.put(key, key);
+        }
+        assertSameMappings(expected, map, 100_000);
+        for (long key = 0; key < 100_000; key += 2) {
+            assertEquals(expected.remove(key), map.remove(key));
+        }
+        assertSameMappings(expected, map, 100_000);
+    }
+
+    @Test
+    public void slidingWindowOfKeysMatchesHashMap() {
+        LongObjectHashMap<Long> map = new LongObjectHashMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        int window = 1_000;
+        // keys are added and removed in order, as quotes in flight complete
+        for (long key = 0; key < 50_000; key++) {
+            map.put(key, key);
+            expected.put(key, key);
+            if (key >= window) {
+                assertEquals(expected.remove(key - window), map.remove(key - window));
+            }
+        }
+        assertEquals(window, map.size());
+        for (long key = 50_000 - window; key < 50_000; key++) {
+            assertEquals(Long.valueOf(key), map.get(key));
+        }
+        assertFalse(map.containsKey(50_000 - window - 1));
+    }
+
+    @Test
+    public void negativeAndExtremeKeys() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        long[] keys = {0L, -1L, Long.MIN_VALUE, Long.MAX_VALUE, 1L << 32, -(1L << 32)};
+        for (long key : keys) {
+            assertNull(map.put(key, String.valueOf(key)));
+        }
+        for (long key : keys) {
+            assertEquals(String.valueOf(key), map.get(key));
+        }
+        assertEquals(keys.length, map.size());
+    }
+
+    @Test
+    public void valuesAndClear() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        map.put(1L, "a");
+        map.put(2L, "b");
+        List<String> values = map.values();
+        assertEquals(2, values.size());
+        assertTrue(values.contains("a") && values.contains("b"));
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(1L));
+        assertNull(map.put(1L, "c"));
+        assertEquals("c", map.get(1L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void putNullValueThrows() {
+        new LongObjectHashMap<String>().put(1L, null);
+    }
+
+    /**
+     * Method that checks that both maps hold the same mappings for the keys below the bound
+     *
+     * @param expected the HashMap
+     * @param map the LongObjectHashMap
+     * @param keyBound the keys to check are 0 up to this bound
+     */
+    private static <V> void assertSameMappings(Map<Long, V> expected, LongObjectHashMap<V> map, long keyBound) {
+        assertEquals(expected.size(), map.size());
+        for (long key = 0; key < keyBound; key++) {
+            assertEquals("get " + key, expected.get(key), map.get(key));
+            assertEquals("containsKey " + key, expected.containsKey(key), map.containsKey(key));
+        }
+        assertEquals(expected.size(), map.values().size());
+    }
+}
@@ -1,5 +1,8 @@
 package hospital.Gateway;
 
+import model.messaging.JmsProvider;
+import model.serialization.MessageBodyCodec;
+
 import javax.jms.*;
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -12,11 +15,6 @@ import java.util.Properties;
  */
 public class Consumer {
 
-    /**
-     * String that holds the JMS provider url
-     */
-    private static final String JMS_PROVIDER_URL = "tcp://localhost:61616";
-
     /**
      * Declare variable that will hold the objects necessary
      * for making the connection to JMS, creating JMS messages
@@ -34,14 +32,16 @@ public class Consumer {
      *
      * @param queueName String that holds the queue name of the queue
      *                  from which the Consumer is going to consume messages
+     * @throws JMSException if the JMS broker cannot be reached within the timeout of the JMS provider url
+     *                      or something else goes wrong with JMS
      */
-    public Consumer(String queueName) {
+    public Consumer(String queueName) throws JMSException {
         try {
             // set properties
             Properties props = new Properties();
             props.setProperty(Context.INITIAL_CONTEXT_FACTORY,
                     "org.apache.activemq.jndi.ActiveMQInitialContextFactory");
-            props.setProperty(Context.PROVIDER_URL, JMS_PROVIDER_URL);
+            props.setProperty(Context.PROVIDER_URL, JmsProvider.getProviderUrl());
             props.put(("queue." + queueName), queueName);
 
             // create connection and session
@@ -57,8 +57,14 @@ public class Consumer {
 
             // start connection
             this.connection.start();
-        } catch (JMSException | NamingException e) {
-            e.printStackTrace();
+        } catch (JMSException e) {
+            closeAfterFailedSetup();
+            throw e;
+        } catch (NamingException e) {
+            closeAfterFailedSetup();
+            JMSException jmsException = new JMSException("JMS provider cannot be looked up: " + e.getMessage());
+            jmsException.setLinkedException(e);
+            throw jmsException;
         }
     }
 
@@ -72,4 +78,60 @@ public class Consumer {
     public void setConsumerMessageListener(MessageListener messageListener) throws JMSException {
         this.consumer.setMessageListener(messageListener);
     }
+
+    /**
+     * Method that closes the connection, which stops the delivery of messages and
+     * waits for a message listener that is still running. Messages that were not
+     * yet delivered stay in the queue for the other consumers.
+     */
+    public void close() {
+        try {
+            this.connection.close();
+        } catch (JMSException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Method that reads the body of a received message, which is either the text
+     * of a TextMessage or the compressed bytes of a BytesMessage with a codec property
+     *
+     * @param message the received message
+     * @return String contents of the message body
+     * @throws MessageFormatException if the message has no body that can be read
+     * @throws JMSException if something goes wrong with JMS
+     */
+    public static String readMessageBody(Message message) throws JMSException {
+        if (message instanceof TextMessage) {
+            return ((TextMessage) message).getText();
+        }
+        if (message instanceof BytesMessage
+                && MessageBodyCodec.DEFLATE_CODEC.equals(message.getStringProperty(MessageBodyCodec.CODEC_PROPERTY))) {
+            BytesMessage bytesMessage = (BytesMessage) message;
+            byte[] compressedMessageBody = new byte[(int) bytesMessage.getBodyLength()];
+            bytesMessage.readBytes(compressedMessageBody);
+            try {
+                return MessageBodyCodec.decompress(
+                        compressedMessageBody, MessageBodyCodec.DEFAULT_MAX_MESSAGE_BODY_BYTES);
+            } catch (IllegalArgumentException e) {
+                MessageFormatException messageFormatException = new MessageFormatException(e.getMessage());
+                messageFormatException.setLinkedException(e);
+                throw messageFormatException;
+            }
+        }
+        throw new MessageFormatException("Message body of " + message.getJMSMessageID() + " cannot be read.");
+    }
+
+    /**
+     * Method that closes the connection after its setup failed,
+     * otherwise the failover transport keeps reconnecting in the background
+     */
+    private void closeAfterFailedSetup() {
+        if (this.connection == null) return;
+        try {
+            this.connection.close();
+        } catch (JMSException e) {
+            // the setup already failed, its exception is the one that is thrown
+        }
+    }
 }
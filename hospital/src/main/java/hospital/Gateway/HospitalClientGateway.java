@@ -1,13 +1,19 @@
 package hospital.Gateway;
 
-import hospital.model.HospitalCostsReply;
-import hospital.model.HospitalCostsRequest;
+import model.hospital.HospitalCostsReply;
+import model.hospital.HospitalCostsReplyBatchItem;
+import model.hospital.HospitalCostsRequest;
+import model.hospital.HospitalCostsRequestBatchItem;
 
+import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Message;
-import javax.jms.TextMessage;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A class that is responsible for delegating
@@ -15,6 +21,44 @@ import java.util.Map;
  */
 public class HospitalClientGateway {
 
+    /**
+     * Store the name of the property that marks a batch message
+     * and the limits of a batch of HospitalCostsReplies
+     */
+    private static final String BATCH_PROPERTY = "batch";
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final long BATCH_WINDOW_MILLIS = 5;
+
+    /**
+     * Store the message body length from which a message is sent compressed,
+     * negative to never compress
+     */
+    private static final int COMPRESSION_THRESHOLD = 1024;
+
+    /**
+     * Store whether replies leave out the Address of the hospital. The broker never uses
+     * the address, it knows the hospital by the queue name sent along with every reply.
+     */
+    private static final boolean ADDRESS_OMITTED = true;
+
+    /**
+     * Store how often a request that failed with a JMSException is handled again
+     * and how long the first retry waits in milliseconds
+     */
+    private static final int MAX_REDELIVERIES = 3;
+    private static final long INITIAL_REDELIVERY_BACKOFF_MILLIS = 100;
+
+    /**
+     * Store how long closing the gateway waits for the scheduled retries in milliseconds
+     */
+    private static final long CLOSE_TIMEOUT_MILLIS = 1_000;
+
+    /**
+     * Store the queue name this hospital consumes requests from,
+     * it is sent along with every reply so the broker knows who replied
+     */
+    private String consumerQueueName;
+
     /**
      * Declare Consumer and Producer to delegate
      * consumption and production of messages respectively
@@ -29,18 +73,47 @@ public class HospitalClientGateway {
 
     /**
      * Map HospitalCostsRequest to an ID in order to distinguish which
-     * HospitalCostsRequest corresponds to a received HospitalCostsReply
+     * HospitalCostsRequest corresponds to a received HospitalCostsReply,
+     * keyed by identity because equal requests can be in flight at the same time.
+     * The maps are filled on the JMS thread and read on the JavaFX thread, so they
+     * are thread-safe, and their entries are removed as soon as the reply is sent.
      */
     private Map<HospitalCostsRequest, String> hospitalCostsRequestToCorrelationMap;
 
     /**
-     * Map correlation ID to an aggregation ID
+     * Map correlation ID to an aggregation ID and to the JMSPriority of the request,
+     * the reply gets the same JMSPriority so an urgent quote is not held up on the way back
      */
-    private Map<String, Integer> correlationToAggregationMap;
+    private Map<String, Long> correlationToAggregationMap;
+    private Map<String, Integer> correlationToPriorityMap;
+
+    /**
+     * Map correlation ID to the JMSReplyTo of the request, which is the reply queue of the
+     * broker instance that holds the aggregation. A request without one is answered
+     * on the queue of the producer.
+     */
+    private Map<String, Destination> correlationToReplyDestinationMap;
+
+    /**
+     * Store the HospitalCostsRequests that arrived in a batch,
+     * their replies are sent back in a batch as well
+     */
+    private Set<HospitalCostsRequest> batchedHospitalCostsRequests;
+
+    /**
+     * Declare HospitalReplyBatcher that groups the replies to batched requests
+     */
+    private HospitalReplyBatcher hospitalReplyBatcher;
+
+    /**
+     * Declare the DeadLetterChannel that retries the requests that failed
+     * and forwards the malformed ones to the dead-letter queue
+     */
+    private DeadLetterChannel deadLetterChannel;
 
     /**
      * Constructor that initializes the consumer, producer, hospitalCostsRequestToCorrelationMap,
-     * hospitalCostsSerializer and sets a consumer message listener
+     * hospitalCostsSerializer, the DeadLetterChannel and sets a consumer message listener
      *
      * @param producerQueueName the queue name for initializing the producer
      * @param consumerQueueName the queue name for initializing the consumer
@@ -48,38 +121,84 @@ public class HospitalClientGateway {
      */
     public HospitalClientGateway(String producerQueueName, String consumerQueueName) throws JMSException {
         // initialize all properties
+        this.consumerQueueName = consumerQueueName;
         this.consumer = new Consumer(consumerQueueName);
         this.producer = new Producer(producerQueueName);
         this.hospitalCostsSerializer = new HospitalCostsSerializer();
-        this.hospitalCostsRequestToCorrelationMap = new HashMap<>();
-        this.correlationToAggregationMap = new HashMap<>();
+        this.hospitalCostsRequestToCorrelationMap = Collections.synchronizedMap(new IdentityHashMap<>());
+        this.correlationToAggregationMap = new ConcurrentHashMap<>();
+        this.correlationToPriorityMap = new ConcurrentHashMap<>();
+        this.correlationToReplyDestinationMap = new ConcurrentHashMap<>();
+        this.batchedHospitalCostsRequests =
+                Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        this.hospitalReplyBatcher = new HospitalReplyBatcher(MAX_BATCH_SIZE, BATCH_WINDOW_MILLIS) {
+            public void onBatchReady(Destination replyDestination, List<HospitalCostsReplyBatchItem> batch) {
+                sendHospitalCostsReplyBatch(replyDestination, batch);
+            }
+        };
+        this.deadLetterChannel = new DeadLetterChannel(
+                consumerQueueName + DeadLetterChannel.DEAD_LETTER_QUEUE_SUFFIX,
+                MAX_REDELIVERIES,
+                INITIAL_REDELIVERY_BACKOFF_MILLIS);
 
         /*
           Event listener that receives the JMS message, deserializes the body to HospitalCostsReply,
-          finds corresponding HospitalCostsRequest and pushes both to parent class through a callback
+          finds corresponding HospitalCostsRequest and pushes both to parent class through a callback,
+          failures of the listener are retried or dead-lettered by the DeadLetterChannel
          */
-        this.consumer.setConsumerMessageListener(message -> {
-            try {
-                // typecast received message to TextMessage
-                TextMessage msg = (TextMessage) message;
-                // get the HospitalCostsRequest from the message body
-                HospitalCostsRequest hospitalCostsRequest =
-                        this.hospitalCostsSerializer.deserializeHospitalCostsRequestJSON(msg.getText());
-                // map necessary information
-                this.hospitalCostsRequestToCorrelationMap.put(
-                        hospitalCostsRequest,
-                        msg.getJMSMessageID()
-                );
-                this.correlationToAggregationMap.put(msg.getJMSMessageID(), msg.getIntProperty("aggregationID"));
-                // push the received HospitalCostsRequest
-                onHospitalCostsRequestArrived(hospitalCostsRequest);
-            } catch (JMSException e) { e.printStackTrace(); }
-        });
+        this.consumer.setConsumerMessageListener(this.deadLetterChannel.guard(message -> {
+            // read the (compressed) message body
+            String messageBody = Consumer.readMessageBody(message);
+            if (message.propertyExists(BATCH_PROPERTY) && message.getBooleanProperty(BATCH_PROPERTY)) {
+                // unpack the batch and push every HospitalCostsRequest on its own
+                List<HospitalCostsRequestBatchItem> batch =
+                        this.hospitalCostsSerializer.deserializeHospitalCostsRequestBatchJSON(messageBody);
+                for (HospitalCostsRequestBatchItem batchItem : batch) {
+                    HospitalCostsRequest hospitalCostsRequest = batchItem.getRequest();
+                    this.hospitalCostsRequestToCorrelationMap.put(
+                            hospitalCostsRequest,
+                            batchItem.getCorrelationID()
+                    );
+                    this.correlationToAggregationMap.put(
+                            batchItem.getCorrelationID(),
+                            batchItem.getAggregationID()
+                    );
+                    this.correlationToPriorityMap.put(batchItem.getCorrelationID(), batchItem.getPriority());
+                    if (message.getJMSReplyTo() != null) {
+                        this.correlationToReplyDestinationMap.put(
+                                batchItem.getCorrelationID(),
+                                message.getJMSReplyTo()
+                        );
+                    }
+                    this.batchedHospitalCostsRequests.add(hospitalCostsRequest);
+                    onHospitalCostsRequestArrived(hospitalCostsRequest);
+                }
+                return;
+            }
+            // get the HospitalCostsRequest from the message body
+            HospitalCostsRequest hospitalCostsRequest =
+                    this.hospitalCostsSerializer.deserializeHospitalCostsRequestJSON(messageBody);
+            // map necessary information
+            this.hospitalCostsRequestToCorrelationMap.put(
+                    hospitalCostsRequest,
+                    message.getJMSMessageID()
+            );
+            this.correlationToAggregationMap.put(message.getJMSMessageID(), message.getLongProperty("aggregationID"));
+            this.correlationToPriorityMap.put(message.getJMSMessageID(), message.getJMSPriority());
+            if (message.getJMSReplyTo() != null) {
+                this.correlationToReplyDestinationMap.put(message.getJMSMessageID(), message.getJMSReplyTo());
+            }
+            // push the received HospitalCostsRequest
+            onHospitalCostsRequestArrived(hospitalCostsRequest);
+        }));
     }
 
     /**
      * Method that prepares the JMS message, sets all necessary field
-     * (JMSCorrelationID and int property aggregationID) and then sends the message
+     * (JMSCorrelationID, long property aggregationID and string property
+     * hospitalQueueName) and then sends the message with the JMSPriority of the request
+     * to the JMSReplyTo of the request. The request is forgotten once its reply is sent,
+     * a request that was already answered is not answered again.
      *
      * @param hospitalCostsRequest that is being responded to
      * @param hospitalCostsReply related to the HospitalCostsRequest
@@ -89,18 +208,88 @@ public class HospitalClientGateway {
             HospitalCostsRequest hospitalCostsRequest,
             HospitalCostsReply hospitalCostsReply
     ) throws JMSException {
+        // leave out the address, the broker does not need it
+        if (ADDRESS_OMITTED) {
+            hospitalCostsReply = hospitalCostsReply.withoutAddress();
+        }
+        // a request that arrived in a batch is answered in a batch
+        if (this.batchedHospitalCostsRequests.remove(hospitalCostsRequest)) {
+            String correlationId = this.hospitalCostsRequestToCorrelationMap.remove(hospitalCostsRequest);
+            Integer priority = this.correlationToPriorityMap.remove(correlationId);
+            this.hospitalReplyBatcher.addHospitalCostsReply(
+                    this.correlationToReplyDestinationMap.remove(correlationId),
+                    new HospitalCostsReplyBatchItem(
+                            correlationId,
+                            this.correlationToAggregationMap.remove(correlationId),
+                            hospitalCostsReply,
+                            priority != null ? priority : Message.DEFAULT_PRIORITY));
+            return;
+        }
+        // get necessary information from maps
+        String correlationId = this.hospitalCostsRequestToCorrelationMap.get(hospitalCostsRequest);
+        if (correlationId == null) {
+            System.err.println("Error: " + hospitalCostsRequest + " is already answered.");
+            return;
+        }
+        Long aggregationId = this.correlationToAggregationMap.get(correlationId);
+        Integer priority = this.correlationToPriorityMap.get(correlationId);
         // serialize to JSON string the HospitalCostsReply
         String hospitalCostsReplyJSON = this.hospitalCostsSerializer.serializeHospitalCostsReply(hospitalCostsReply);
         // create the message
-        Message message = this.producer.createMessage(hospitalCostsReplyJSON);
-        // get necessary information from maps
-        String correlationId = this.hospitalCostsRequestToCorrelationMap.get(hospitalCostsRequest);
-        Integer aggregationId = this.correlationToAggregationMap.get(correlationId);
+        Message message = this.producer.createMessage(hospitalCostsReplyJSON, COMPRESSION_THRESHOLD);
         // include necessary information in message
         message.setJMSCorrelationID(correlationId);
-        message.setIntProperty("aggregationID", aggregationId);
+        message.setLongProperty("aggregationID", aggregationId);
+        message.setStringProperty("hospitalQueueName", this.consumerQueueName);
         // send the message
-        this.producer.sendMessage(message);
+        this.producer.sendMessage(
+                message,
+                this.correlationToReplyDestinationMap.get(correlationId),
+                priority != null ? priority : Message.DEFAULT_PRIORITY);
+        // forget the request only once the reply is sent, a failed reply can be sent again
+        this.hospitalCostsRequestToCorrelationMap.remove(hospitalCostsRequest);
+        this.correlationToAggregationMap.remove(correlationId);
+        this.correlationToPriorityMap.remove(correlationId);
+        this.correlationToReplyDestinationMap.remove(correlationId);
+    }
+
+    /**
+     * Method that serializes a batch of HospitalCostsReplies and sends it as one message
+     * with the highest JMSPriority of the replies in the batch
+     *
+     * @param replyDestination where the batch is sent to, null for the queue of the producer
+     * @param batch the HospitalCostsReplies with their correlation and aggregation IDs
+     */
+    private void sendHospitalCostsReplyBatch(Destination replyDestination, List<HospitalCostsReplyBatchItem> batch) {
+        try {
+            Message message = this.producer.createMessage(
+                    this.hospitalCostsSerializer.serializeHospitalCostsReplyBatch(batch),
+                    COMPRESSION_THRESHOLD);
+            message.setBooleanProperty(BATCH_PROPERTY, true);
+            message.setStringProperty("hospitalQueueName", this.consumerQueueName);
+            int priority = 0;
+            for (HospitalCostsReplyBatchItem batchItem : batch) {
+                priority = Math.max(priority, batchItem.getPriority());
+            }
+            this.producer.sendMessage(message, replyDestination, priority);
+        } catch (JMSException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Method that stops consuming HospitalCostsRequests, sends the replies that wait
+     * in a batch and closes the JMS resources of the gateway. The requests that were
+     * not consumed yet stay in the queue for the other instances of the hospital.
+     * The requests that were consumed but not answered are dropped: they are acknowledged
+     * already and only a person can answer them, so waiting would not help. The broker
+     * completes their quotes at the aggregation deadline with the replies of the other hospitals.
+     */
+    public void close() {
+        this.consumer.close();
+        this.deadLetterChannel.close(CLOSE_TIMEOUT_MILLIS);
+        this.hospitalReplyBatcher.close();
+        this.producer.close();
     }
 
     /**
@@ -1,8 +1,15 @@
 package hospital.Gateway;
 
 import com.google.gson.Gson;
-import hospital.model.HospitalCostsReply;
-import hospital.model.HospitalCostsRequest;
+import com.google.gson.reflect.TypeToken;
+import model.hospital.HospitalCostsReplyBatchItem;
+import model.hospital.HospitalCostsRequestBatchItem;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import model.hospital.HospitalCostsReply;
+import model.hospital.HospitalCostsRequest;
+import model.serialization.ModelSerializer;
 
 /**
  * A class that is responsible for serializing to a JSON string and
@@ -10,14 +17,19 @@ import hospital.model.HospitalCostsRequest;
  */
 public class HospitalCostsSerializer {
 
+    // Store the types of the batches of HospitalCostsRequests and HospitalCostsReplies
+    private static final Type REQUEST_BATCH_TYPE = new TypeToken<List<HospitalCostsRequestBatchItem>>() {}.getType();
+    private static final Type REPLY_BATCH_TYPE = new TypeToken<List<HospitalCostsReplyBatchItem>>() {}.getType();
+
     // Declare Gson object that does the (de)serializing
     private Gson serializer;
 
     /**
-     * Constructor that initializes the Gson object
+     * Constructor that uses the Gson object shared by all gateways,
+     * which (de)serializes the model classes without reflection
      */
     public HospitalCostsSerializer() {
-        this.serializer = new Gson();
+        this.serializer = ModelSerializer.getGson();
     }
 
     /**
@@ -63,4 +75,48 @@ public class HospitalCostsSerializer {
     public HospitalCostsReply deserializeHospitalCostsReplyJSON(String json) {
         return this.serializer.fromJson(json, HospitalCostsReply.class);
     }
+
+    /**
+     * Serializes a batch of HospitalCostsRequests to a JSON string by using the Gson object
+     * then returns the serialized string
+     *
+     * @param batch List of HospitalCostsRequestBatchItems to be serialized
+     * @return String batch serialized to a JSON string
+     */
+    public String serializeHospitalCostsRequestBatch(List<HospitalCostsRequestBatchItem> batch) {
+        return this.serializer.toJson(batch, REQUEST_BATCH_TYPE);
+    }
+
+    /**
+     * Serializes a batch of HospitalCostsReplies to a JSON string by using the Gson object
+     * then returns the serialized string
+     *
+     * @param batch List of HospitalCostsReplyBatchItems to be serialized
+     * @return String batch serialized to a JSON string
+     */
+    public String serializeHospitalCostsReplyBatch(List<HospitalCostsReplyBatchItem> batch) {
+        return this.serializer.toJson(batch, REPLY_BATCH_TYPE);
+    }
+
+    /**
+     * Deserializes a JSON string to a batch of HospitalCostsRequests by using the Gson object,
+     * then returns the deserialized batch
+     *
+     * @param json JSON string to be deserialized
+     * @return List of HospitalCostsRequestBatchItems
+     */
+    public List<HospitalCostsRequestBatchItem> deserializeHospitalCostsRequestBatchJSON(String json) {
+        return this.serializer.fromJson(json, REQUEST_BATCH_TYPE);
+    }
+
+    /**
+     * Deserializes a JSON string to a batch of HospitalCostsReplies by using the Gson object,
+     * then returns the deserialized batch
+     *
+     * @param json JSON string to be deserialized
+     * @return List of HospitalCostsReplyBatchItems
+     */
+    public List<HospitalCostsReplyBatchItem> deserializeHospitalCostsReplyBatchJSON(String json) {
+        return this.serializer.fromJson(json, REPLY_BATCH_TYPE);
+    }
 }
@@ -0,0 +1,124 @@
+package hospital.Gateway;
+
+import model.hospital.HospitalCostsReplyBatchItem;
+
+import javax.jms.Destination;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class responsible for grouping HospitalCostsReplies for the same reply
+ * destination into batches. A batch is handed over as soon as it is full
+ * or when its time window has passed, whatever comes first.
+ */
+public class HospitalReplyBatcher {
+
+    /**
+     * Store the maximum size of a batch and how long a batch waits for more replies
+     */
+    private final int maxBatchSize;
+    private final long batchWindowMillis;
+
+    /**
+     * Map the reply destination to the batch that is being filled,
+     * the null key holds the batch for the default reply queue
+     */
+    private Map<Destination, List<HospitalCostsReplyBatchItem>> destinationToBatchMap;
+
+    /**
+     * Declare the scheduler that hands over a batch when its time window has passed
+     */
+    private ScheduledExecutorService flushScheduler;
+
+    /**
+     * Constructor that sets the batch limits and initializes the scheduler
+     *
+     * @param maxBatchSize the maximum number of replies in a batch
+     * @param batchWindowMillis how long the first reply in a batch waits for more
+     */
+    public HospitalReplyBatcher(int maxBatchSize, long batchWindowMillis) {
+        this.maxBatchSize = maxBatchSize;
+        this.batchWindowMillis = batchWindowMillis;
+        this.destinationToBatchMap = new HashMap<>();
+        this.flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hospital-reply-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Method that adds a reply to the batch of its reply destination
+     *
+     * @param replyDestination where the reply has to be sent, null for the default reply queue
+     * @param batchItem the reply with its correlation and aggregation ID
+     */
+    public void addHospitalCostsReply(Destination replyDestination, HospitalCostsReplyBatchItem batchItem) {
+        List<HospitalCostsReplyBatchItem> fullBatch = null;
+        synchronized (this) {
+            List<HospitalCostsReplyBatchItem> batch = this.destinationToBatchMap.get(replyDestination);
+            // start a new batch and schedule its time window
+            if (batch == null) {
+                batch = new ArrayList<>();
+                this.destinationToBatchMap.put(replyDestination, batch);
+                List<HospitalCostsReplyBatchItem> scheduledBatch = batch;
+                this.flushScheduler.schedule(
+                        () -> flushBatch(replyDestination, scheduledBatch),
+                        this.batchWindowMillis,
+                        TimeUnit.MILLISECONDS);
+            }
+            batch.add(batchItem);
+            if (batch.size() >= this.maxBatchSize) {
+                this.destinationToBatchMap.remove(replyDestination);
+                fullBatch = batch;
+            }
+        }
+        // hand over outside the lock, sending can take a while
+        if (fullBatch != null) onBatchReady(replyDestination, fullBatch);
+    }
+
+    /**
+     * Method that hands over a batch when its time window has passed,
+     * unless it was already handed over because it was full
+     *
+     * @param replyDestination where the batch has to be sent
+     * @param scheduledBatch the batch to be handed over
+     */
+    private void flushBatch(Destination replyDestination, List<HospitalCostsReplyBatchItem> scheduledBatch) {
+        synchronized (this) {
+            if (this.destinationToBatchMap.get(replyDestination) != scheduledBatch) return;
+            this.destinationToBatchMap.remove(replyDestination);
+        }
+        onBatchReady(replyDestination, scheduledBatch);
+    }
+
+    /**
+     * Method that hands over every batch that is being filled right away
+     * and stops the scheduler, no reply can be added afterwards
+     */
+    public void close() {
+        Map<Destination, List<HospitalCostsReplyBatchItem>> batches;
+        synchronized (this) {
+            this.flushScheduler.shutdownNow();
+            batches = new HashMap<>(this.destinationToBatchMap);
+            this.destinationToBatchMap.clear();
+        }
+        for (Map.Entry<Destination, List<HospitalCostsReplyBatchItem>> batch : batches.entrySet()) {
+            onBatchReady(batch.getKey(), batch.getValue());
+        }
+    }
+
+    /**
+     * A callback that needs to be implemented when creating
+     * an instance of this class that pushes a batch to be sent
+     *
+     * @param replyDestination where the batch has to be sent, null for the default reply queue
+     * @param batch the replies in the batch
+     */
+    public void onBatchReady(Destination replyDestination, List<HospitalCostsReplyBatchItem> batch) {}
+}
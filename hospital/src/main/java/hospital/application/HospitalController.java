@@ -1,9 +1,6 @@
 package hospital.application;
 
 import hospital.Gateway.HospitalClientGateway;
-import hospital.model.Address;
-import hospital.model.HospitalCostsReply;
-import hospital.model.HospitalCostsRequest;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
@@ -11,6 +8,9 @@ import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
+import model.hospital.Address;
+import model.hospital.HospitalCostsReply;
+import model.hospital.HospitalCostsRequest;
 
 import javax.jms.JMSException;
 import java.net.URL;
@@ -91,6 +91,15 @@ class HospitalController implements Initializable {
         }
     }
 
+    /**
+     * Method that stops receiving requests, sends the replies that are still
+     * waiting and closes the HospitalClientGateway, requests in the list
+     * that were not answered yet are dropped
+     */
+    public void close() {
+        if (this.hospitalClientGateway != null) this.hospitalClientGateway.close();
+    }
+
     /**
      * Method that adds HospitalListLine to the lvRequestsReply
      *
@@ -1,7 +1,7 @@
 package hospital.application;
 
-import hospital.model.HospitalCostsReply;
-import hospital.model.HospitalCostsRequest;
+import model.hospital.HospitalCostsReply;
+import model.hospital.HospitalCostsRequest;
 
 public class HospitalListLine {
 	
@@ -1,6 +1,5 @@
 package hospital.application;
 
-import hospital.model.Address;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.event.EventHandler;
@@ -9,6 +8,7 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
+import model.hospital.Address;
 
 import java.net.URL;
 
@@ -45,6 +45,8 @@ public class HospitalMain  extends Application {
             primaryStage.setTitle(hospitalName);
             primaryStage.setScene(new Scene(root, 388, 295));
             primaryStage.setOnCloseRequest(t -> {
+                // send the replies that are still waiting before the JMS connections go away
+                hospitalController.close();
                 Platform.exit();
                 System.exit(0);
             });
@@ -1,6 +1,6 @@
 package hospital.application;
 
-import hospital.model.Address;
+import model.hospital.Address;
 
 public class HospitalUMCMain extends HospitalMain {
 
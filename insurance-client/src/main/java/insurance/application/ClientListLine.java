@@ -1,7 +1,7 @@
 package insurance.application;
 
-import insurance.model.TreatmentCostsReply;
-import insurance.model.TreatmentCostsRequest;
+import model.client.TreatmentCostsReply;
+import model.client.TreatmentCostsRequest;
 
 public class ClientListLine {
 
@@ -0,0 +1,272 @@
+package insurance.application;
+
+import insurance.gateway.BrokerBusyException;
+import insurance.gateway.QuoteUnavailableException;
+import insurance.gateway.InsuranceClientGateway;
+import insurance.gateway.TreatmentCostsSerializer;
+import model.client.QuotePriority;
+import model.client.TreatmentCostsReply;
+import model.client.TreatmentCostsRequest;
+
+import javax.jms.JMSException;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless insurance client that reads TreatmentCostsRequests from a CSV or JSONL file,
+ * submits them with a limited number of requests in flight and writes every reply as
+ * a JSON line to an output file in the order the replies complete. The input is
+ * streamed line by line, so memory use does not depend on the size of the file.
+ *
+ * Usage: InsuranceBulkQuoteMain input.(csv|jsonl) output.jsonl [inFlightWindow] [timeoutMillis]
+ *
+ * A CSV line holds ssn,age,treatmentCode,transportDistance,priority and may be preceded by a header.
+ * A request without priority class is sent as BULK, so it does not delay the quotes of other clients.
+ * A request the broker is too busy for is sent again after a backoff, and written as an error
+ * if the broker stays busy.
+ */
+public class InsuranceBulkQuoteMain {
+
+    /**
+     * Store the queue name of the broker
+     */
+    private static final String JMS_BROKER_CLIENT_QUEUE_NAME = "broker-insurance-client-queue";
+
+    /**
+     * Store the defaults of the optional arguments
+     */
+    private static final int DEFAULT_IN_FLIGHT_WINDOW = 100;
+    private static final long DEFAULT_TIMEOUT_MILLIS = 150_000;
+
+    /**
+     * Declare the gateway, the serializer and the output
+     */
+    private final InsuranceClientGateway insuranceClientGateway;
+    private final TreatmentCostsSerializer treatmentCostsSerializer;
+    private final Writer output;
+
+    /**
+     * Declare the window of requests in flight and how long a request waits for its reply
+     */
+    private final int inFlightWindow;
+    private final Semaphore inFlightPermits;
+    private final long timeoutMillis;
+
+    /**
+     * Store the counters of the summary
+     */
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong replied = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong busy = new AtomicLong();
+    private final AtomicLong unavailable = new AtomicLong();
+    private final AtomicLong invalid = new AtomicLong();
+
+    /**
+     * Constructor that sets all properties
+     *
+     * @param insuranceClientGateway the gateway the requests are submitted through
+     * @param output where the replies are written to
+     * @param inFlightWindow the maximum number of requests waiting for a reply
+     * @param timeoutMillis how long a request waits for its reply in milliseconds
+     */
+    public InsuranceBulkQuoteMain(
+            InsuranceClientGateway insuranceClientGateway,
+            Writer output,
+            int inFlightWindow,
+            long timeoutMillis
+    ) {
+        this.insuranceClientGateway = insuranceClientGateway;
+        this.treatmentCostsSerializer = new TreatmentCostsSerializer();
+        this.output = output;
+        this.inFlightWindow = inFlightWindow;
+        this.inFlightPermits = new Semaphore(inFlightWindow);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Method that submits every request of the input and waits until all of them
+     * have received a reply or timed out
+     *
+     * @param input to read the requests from
+     * @param csv true if the input is CSV, false if it is JSONL
+     * @throws IOException if the input cannot be read
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void run(BufferedReader input, boolean csv) throws IOException, InterruptedException {
+        String line;
+        long lineNumber = 0;
+        while ((line = input.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) continue;
+            TreatmentCostsRequest treatmentCostsRequest;
+            try {
+                treatmentCostsRequest = csv ? parseCsvLine(line) : parseJsonLine(line);
+            } catch (RuntimeException e) {
+                // a CSV header is not counted as an invalid line
+                if (!(csv && lineNumber == 1)) {
+                    this.invalid.incrementAndGet();
+                    System.err.println("Error: Line " + lineNumber + " is not a valid request: " + line);
+                }
+                continue;
+            }
+            if (treatmentCostsRequest == null) continue;
+            if (treatmentCostsRequest.getPriority() == null) {
+                treatmentCostsRequest = treatmentCostsRequest.withPriority(QuotePriority.BULK);
+            }
+            submit(treatmentCostsRequest);
+        }
+        // wait until every request in flight has completed
+        this.inFlightPermits.acquire(this.inFlightWindow);
+        this.output.flush();
+    }
+
+    /**
+     * Method that submits a request as soon as the window has room for it
+     * and writes its reply to the output when it completes. A request the broker
+     * is too busy for keeps its place in the window while it waits to be sent again.
+     *
+     * @param treatmentCostsRequest the request to submit
+     * @throws InterruptedException if the thread is interrupted while waiting for room
+     */
+    private void submit(TreatmentCostsRequest treatmentCostsRequest) throws InterruptedException {
+        this.inFlightPermits.acquire();
+        this.submitted.incrementAndGet();
+        try {
+            this.insuranceClientGateway
+                    .requestTreatmentCostApproximationAsync(
+                            treatmentCostsRequest,
+                            this.timeoutMillis,
+                            InsuranceClientGateway.DEFAULT_BUSY_RETRIES)
+                    .whenComplete((treatmentCostsReply, throwable) -> {
+                        writeResult(treatmentCostsRequest, treatmentCostsReply, throwable);
+                        this.inFlightPermits.release();
+                    });
+        } catch (JMSException e) {
+            writeResult(treatmentCostsRequest, null, e);
+            this.inFlightPermits.release();
+        }
+    }
+
+    /**
+     * Method that writes a request with its reply, or with the reason it failed, as a JSON line
+     *
+     * @param treatmentCostsRequest the submitted request
+     * @param treatmentCostsReply the reply, or null if the request failed
+     * @param throwable why the request failed, or null if it received a reply
+     */
+    private void writeResult(
+            TreatmentCostsRequest treatmentCostsRequest,
+            TreatmentCostsReply treatmentCostsReply,
+            Throwable throwable
+    ) {
+        StringBuilder line = new StringBuilder(160)
+                .append("{\"request\":")
+                .append(this.treatmentCostsSerializer.serializeTreatmentCostsRequest(treatmentCostsRequest));
+        if (throwable == null) {
+            this.replied.incrementAndGet();
+            line.append(",\"reply\":")
+                    .append(this.treatmentCostsSerializer.serializeTreatmentCostsReply(treatmentCostsReply));
+        } else {
+            this.failed.incrementAndGet();
+            if (throwable instanceof BrokerBusyException) this.busy.incrementAndGet();
+            if (throwable instanceof QuoteUnavailableException) this.unavailable.incrementAndGet();
+            line.append(",\"error\":\"").append(throwable.getClass().getSimpleName()).append('"');
+        }
+        line.append("}\n");
+        synchronized (this.output) {
+            try {
+                this.output.write(line.toString());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Method that parses a CSV line with ssn,age,treatmentCode,transportDistance,priority
+     *
+     * @param line the CSV line
+     * @return TreatmentCostsRequest of the line
+     * @throws IllegalArgumentException if the line is not a valid request
+     */
+    private static TreatmentCostsRequest parseCsvLine(String line) throws IllegalArgumentException {
+        String[] fields = line.split(",", -1);
+        if (fields.length < 3) {
+            throw new IllegalArgumentException("Expected ssn,age,treatmentCode[,transportDistance[,priority]].");
+        }
+        return new TreatmentCostsRequest(
+                Integer.parseInt(fields[0].trim()),
+                Integer.parseInt(fields[1].trim()),
+                fields[2].trim(),
+                fields.length > 3 && !fields[3].trim().isEmpty() ? Integer.parseInt(fields[3].trim()) : 0,
+                fields.length > 4 && !fields[4].trim().isEmpty()
+                        ? QuotePriority.valueOf(fields[4].trim().toUpperCase())
+                        : null);
+    }
+
+    /**
+     * Method that parses a JSON line
+     *
+     * @param line the JSON line
+     * @return TreatmentCostsRequest of the line
+     */
+    private TreatmentCostsRequest parseJsonLine(String line) {
+        return this.treatmentCostsSerializer.deserializeTreatmentCostsRequestJSON(line);
+    }
+
+    /**
+     * Method that prints how many requests were submitted and answered and how fast
+     *
+     * @param elapsedMillis how long the run took in milliseconds
+     */
+    private void printSummary(long elapsedMillis) {
+        double seconds = Math.max(1, elapsedMillis) / 1000.0;
+        System.out.println("Submitted: " + this.submitted.get()
+                + ", replied: " + this.replied.get()
+                + ", failed: " + this.failed.get()
+                + " (broker busy: " + this.busy.get()
+                + ", no quote available: " + this.unavailable.get() + ")"
+                + ", invalid lines: " + this.invalid.get());
+        System.out.println(String.format("Elapsed: %.1f s, throughput: %.1f quotes/s",
+                seconds, this.replied.get() / seconds));
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println(
+                    "Usage: InsuranceBulkQuoteMain input.(csv|jsonl) output.jsonl [inFlightWindow] [timeoutMillis]");
+            System.exit(1);
+        }
+        boolean csv = args[0].toLowerCase().endsWith(".csv");
+        int inFlightWindow = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_IN_FLIGHT_WINDOW;
+        long timeoutMillis = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_TIMEOUT_MILLIS;
+        int exitCode = 0;
+        try (BufferedReader input = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8);
+             BufferedWriter output = Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+            InsuranceClientGateway insuranceClientGateway = new InsuranceClientGateway(JMS_BROKER_CLIENT_QUEUE_NAME);
+            InsuranceBulkQuoteMain bulkQuote =
+                    new InsuranceBulkQuoteMain(insuranceClientGateway, output, inFlightWindow, timeoutMillis);
+            long start = System.currentTimeMillis();
+            bulkQuote.run(input, csv);
+            bulkQuote.printSummary(System.currentTimeMillis() - start);
+            // delete the temporary reply queue
+            insuranceClientGateway.close();
+        } catch (IOException | JMSException e) {
+            e.printStackTrace();
+            exitCode = 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exitCode = 1;
+        }
+        // the JMS connections keep the application alive otherwise
+        System.exit(exitCode);
+    }
+}
@@ -1,19 +1,18 @@
 package insurance.application;
 
 import insurance.gateway.InsuranceClientGateway;
-import insurance.model.TreatmentCostsReply;
-import insurance.model.TreatmentCostsRequest;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
+import model.client.TreatmentCostsReply;
+import model.client.TreatmentCostsRequest;
 
 import javax.jms.JMSException;
 import java.net.URL;
 import java.util.ResourceBundle;
-import java.util.UUID;
 
 public class InsuranceClientController implements Initializable {
     /**
@@ -50,9 +49,8 @@ public class InsuranceClientController implements Initializable {
         tfKilometers.setDisable(true);
 
         try {
-            this.insuranceClientGateway = new InsuranceClientGateway(
-                    JMS_BROKER_CLIENT_QUEUE_NAME,
-                    UUID.randomUUID().toString()) {
+            // replies arrive on a temporary queue that disappears with the client
+            this.insuranceClientGateway = new InsuranceClientGateway(JMS_BROKER_CLIENT_QUEUE_NAME) {
                 public void onTreatmentCostsReplyArrived(
                         TreatmentCostsRequest treatmentCostsRequest,
                         TreatmentCostsReply treatmentCostsReply
@@ -121,7 +119,7 @@ public class InsuranceClientController implements Initializable {
 
     private ClientListLine findClientListLineByTreatmentCostsRequest(TreatmentCostsRequest treatmentCostsRequest) {
         for(ClientListLine cll : this.lvRequestsReplies.getItems()) {
-            if (treatmentCostsRequest.equals(cll.getRequest())) return cll;
+            if (treatmentCostsRequest == cll.getRequest()) return cll;
         }
         return null;
     }
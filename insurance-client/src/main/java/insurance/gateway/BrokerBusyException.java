@@ -0,0 +1,19 @@
+package insurance.gateway;
+
+/**
+ * Exception that fails the reply of a request the broker did not accept, because it
+ * has too many quotes in flight or is shutting down. The request can be sent again later.
+ */
+public class BrokerBusyException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor that sets the reason why the request was not accepted
+     *
+     * @param message the reason why the request was not accepted
+     */
+    public BrokerBusyException(String message) {
+        super(message);
+    }
+}
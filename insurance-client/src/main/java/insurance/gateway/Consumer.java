@@ -1,5 +1,7 @@
 package insurance.gateway;
 
+import model.messaging.JmsProvider;
+
 import javax.jms.*;
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -13,9 +15,12 @@ import java.util.Properties;
 public class Consumer {
 
     /**
-     * String that holds the JMS provider url
+     * String that holds the JMS provider url. The JMS broker pushes at most one reply ahead of
+     * the message listener, so a listener that is held back leaves the other replies on the
+     * JMS broker instead of in memory.
      */
-    private static final String JMS_PROVIDER_URL = "tcp://localhost:61616";
+    private static final String JMS_PROVIDER_URL =
+            JmsProvider.getProviderUrl("jms.prefetchPolicy.queuePrefetch=1");
 
     /**
      * Declare variable that will hold the objects necessary
@@ -34,8 +39,10 @@ public class Consumer {
      *
      * @param queueName String that holds the queue name of the queue
      *                  from which the Consumer is going to consume messages
+     * @throws JMSException if the JMS broker cannot be reached within the timeout of the JMS provider url
+     *                      or something else goes wrong with JMS
      */
-    public Consumer(String queueName) {
+    public Consumer(String queueName) throws JMSException {
         try {
             // set properties
             Properties props = new Properties();
@@ -57,11 +64,67 @@ public class Consumer {
 
             // start connection
             this.connection.start();
-        } catch (JMSException | NamingException e) {
-            e.printStackTrace();
+        } catch (JMSException e) {
+            closeAfterFailedSetup();
+            throw e;
+        } catch (NamingException e) {
+            closeAfterFailedSetup();
+            JMSException jmsException = new JMSException("JMS provider cannot be looked up: " + e.getMessage());
+            jmsException.setLinkedException(e);
+            throw jmsException;
         }
     }
 
+    /**
+     * Constructor that initializes the connection, the session, a temporary
+     * queue and the consumer. The temporary queue only exists as long as the
+     * connection, so the JMS broker removes it when this Consumer is closed
+     * or the client goes away.
+     *
+     * @throws JMSException if the JMS broker cannot be reached within the timeout of the JMS provider url
+     *                      or something else goes wrong with JMS
+     */
+    public Consumer() throws JMSException {
+        try {
+            // set properties
+            Properties props = new Properties();
+            props.setProperty(Context.INITIAL_CONTEXT_FACTORY,
+                    "org.apache.activemq.jndi.ActiveMQInitialContextFactory");
+            props.setProperty(Context.PROVIDER_URL, JMS_PROVIDER_URL);
+
+            // create connection and session
+            Context jndiContext = new InitialContext(props);
+            ConnectionFactory connectionFactory = (ConnectionFactory) jndiContext
+                    .lookup("ConnectionFactory");
+            this.connection = connectionFactory.createConnection();
+            this.session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+
+            // create temporary queue and consumer
+            this.destination = this.session.createTemporaryQueue();
+            this.consumer = session.createConsumer(this.destination);
+
+            // start connection
+            this.connection.start();
+        } catch (JMSException e) {
+            closeAfterFailedSetup();
+            throw e;
+        } catch (NamingException e) {
+            closeAfterFailedSetup();
+            JMSException jmsException = new JMSException("JMS provider cannot be looked up: " + e.getMessage());
+            jmsException.setLinkedException(e);
+            throw jmsException;
+        }
+    }
+
+    /**
+     * Method that returns the destination the consumer consumes from
+     *
+     * @return Destination of the consumer
+     */
+    public Destination getDestination() {
+        return this.destination;
+    }
+
     /**
      * A method that sets in the consumer a message listener
      * that is going to handle messages when they arrive
@@ -72,4 +135,31 @@ public class Consumer {
     public void setConsumerMessageListener(MessageListener messageListener) throws JMSException {
         this.consumer.setMessageListener(messageListener);
     }
+
+    /**
+     * Method that stops consuming, deletes the temporary queue if there
+     * is one and closes the connection
+     *
+     * @throws JMSException if something goes wrong with JMS
+     */
+    public void close() throws JMSException {
+        this.consumer.close();
+        if (this.destination instanceof TemporaryQueue) {
+            ((TemporaryQueue) this.destination).delete();
+        }
+        this.connection.close();
+    }
+
+    /**
+     * Method that closes the connection after its setup failed,
+     * otherwise the failover transport keeps reconnecting in the background
+     */
+    private void closeAfterFailedSetup() {
+        if (this.connection == null) return;
+        try {
+            this.connection.close();
+        } catch (JMSException e) {
+            // the setup already failed, its exception is the one that is thrown
+        }
+    }
 }
@@ -0,0 +1,298 @@
+package insurance.gateway;
+
+import com.google.gson.JsonParseException;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageFormatException;
+import javax.jms.MessageListener;
+import javax.jms.TextMessage;
+import java.util.Enumeration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A class responsible for the messages a gateway fails to handle. A message that fails
+ * with a JMSException is handled again after a backoff that doubles with every attempt,
+ * up to a maximum number of redeliveries. A message that can never be handled, because
+ * its body cannot be read or parsed, is not retried. A message
+ * that fails with any other RuntimeException points at a bug in the handler, it is
+ * reported as an error and not retried either. Messages
+ * that are not handled in the end are forwarded with the reason of the failure to the
+ * dead-letter queue of the gateway. Retries wait on a thread of their own, so a failing
+ * message never stalls the consumer thread.
+ */
+public class DeadLetterChannel {
+
+    /**
+     * Store the suffix that makes the name of the dead-letter queue of a queue
+     */
+    public static final String DEAD_LETTER_QUEUE_SUFFIX = ".DLQ";
+
+    /**
+     * Store the names of the message properties that tell why a message was dead-lettered,
+     * the exception that caused it, how often it was handled and where it was received from
+     */
+    public static final String DEAD_LETTER_REASON_PROPERTY = "deadLetterReason";
+    public static final String DEAD_LETTER_CAUSE_PROPERTY = "deadLetterCause";
+    public static final String DEAD_LETTER_ATTEMPTS_PROPERTY = "deadLetterAttempts";
+    public static final String ORIGINAL_DESTINATION_PROPERTY = "originalDestination";
+    public static final String ORIGINAL_MESSAGE_ID_PROPERTY = "originalMessageID";
+
+    /**
+     * Store the reasons why a message is dead-lettered
+     */
+    public static final String MALFORMED_REASON = "malformed";
+    public static final String REDELIVERIES_EXHAUSTED_REASON = "redeliveriesExhausted";
+    public static final String HANDLER_FAILED_REASON = "handlerFailed";
+
+    /**
+     * Store the name of the dead-letter queue, how often a failed message is handled again
+     * and how long the first retry waits in milliseconds
+     */
+    private final String deadLetterQueueName;
+    private final int maxRedeliveries;
+    private final long initialBackoffMillis;
+
+    /**
+     * Declare the Producer that forwards messages to the dead-letter queue
+     * and the scheduler on which the retries wait
+     */
+    private Producer producer;
+    private ScheduledExecutorService redeliveryScheduler;
+
+    /**
+     * Store the counters of the handled, retried, malformed, failed
+     * and dead-lettered messages
+     */
+    private AtomicLong handled;
+    private AtomicLong redelivered;
+    private AtomicLong malformed;
+    private AtomicLong failed;
+    private AtomicLong deadLettered;
+
+    /**
+     * Constructor that initializes the producer, the redelivery scheduler and the counters
+     *
+     * @param deadLetterQueueName the queue the messages that are not handled are forwarded to
+     * @param maxRedeliveries how often a message that failed with a JMSException is handled again
+     * @param initialBackoffMillis how long the first retry waits in milliseconds
+     * @throws JMSException if the producer of the dead-letter queue cannot be created
+     */
+    public DeadLetterChannel(String deadLetterQueueName, int maxRedeliveries, long initialBackoffMillis)
+            throws JMSException {
+        this.deadLetterQueueName = deadLetterQueueName;
+        this.maxRedeliveries = maxRedeliveries;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.producer = new Producer(deadLetterQueueName);
+        this.redeliveryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, deadLetterQueueName + "-redelivery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.handled = new AtomicLong();
+        this.redelivered = new AtomicLong();
+        this.malformed = new AtomicLong();
+        this.failed = new AtomicLong();
+        this.deadLettered = new AtomicLong();
+    }
+
+    /**
+     * Method that wraps a MessageHandler into a MessageListener
+     * whose failures are retried or dead-lettered by this channel
+     *
+     * @param messageHandler the handler of the received messages
+     * @return MessageListener to set in the consumer
+     */
+    public MessageListener guard(MessageHandler messageHandler) {
+        return message -> handleMessage(messageHandler, message, 1);
+    }
+
+    /**
+     * Method that handles a message and decides what happens when it fails
+     *
+     * @param messageHandler the handler of the message
+     * @param message the message to handle
+     * @param attempt the number of the attempt, 1 for the first delivery
+     */
+    private void handleMessage(MessageHandler messageHandler, Message message, int attempt) {
+        try {
+            messageHandler.handleMessage(message);
+            this.handled.incrementAndGet();
+        } catch (MessageFormatException | JsonParseException | IllegalStateException | IllegalArgumentException e) {
+            // a message that cannot be read or parsed fails the same way on every attempt
+            this.malformed.incrementAndGet();
+            deadLetter(message, MALFORMED_REASON, e, attempt);
+        } catch (RuntimeException e) {
+            // any other failure is a bug in the handler, keep the message but report it loudly
+            this.failed.incrementAndGet();
+            System.err.println("Error: Handler failed on message of " + this.deadLetterQueueName);
+            e.printStackTrace();
+            deadLetter(message, HANDLER_FAILED_REASON, e, attempt);
+        } catch (JMSException e) {
+            if (attempt > this.maxRedeliveries) {
+                deadLetter(message, REDELIVERIES_EXHAUSTED_REASON, e, attempt);
+                return;
+            }
+            this.redelivered.incrementAndGet();
+            long backoffMillis = this.initialBackoffMillis << (attempt - 1);
+            this.redeliveryScheduler.schedule(
+                    () -> redeliver(messageHandler, message, attempt + 1),
+                    backoffMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Method that runs on the redelivery scheduler and handles a message again
+     * from the start of its body
+     *
+     * @param messageHandler the handler of the message
+     * @param message the message to handle
+     * @param attempt the number of the attempt
+     */
+    private void redeliver(MessageHandler messageHandler, Message message, int attempt) {
+        if (message instanceof BytesMessage) {
+            try {
+                ((BytesMessage) message).reset();
+            } catch (JMSException e) {
+                deadLetter(message, MALFORMED_REASON, e, attempt);
+                return;
+            }
+        }
+        handleMessage(messageHandler, message, attempt);
+    }
+
+    /**
+     * Method that forwards a copy of a message with the reason of its failure
+     * to the dead-letter queue. A message that cannot even be forwarded is only
+     * printed, it must not fail the consumer thread.
+     *
+     * @param message the message that is not handled
+     * @param reason why the message is dead-lettered
+     * @param cause the exception that caused it
+     * @param attempts how often the message was handled
+     */
+    private void deadLetter(Message message, String reason, Exception cause, int attempts) {
+        this.deadLettered.incrementAndGet();
+        try {
+            Message deadLetterMessage = copyMessage(message);
+            deadLetterMessage.setStringProperty(DEAD_LETTER_REASON_PROPERTY, reason);
+            deadLetterMessage.setStringProperty(DEAD_LETTER_CAUSE_PROPERTY, String.valueOf(cause));
+            deadLetterMessage.setIntProperty(DEAD_LETTER_ATTEMPTS_PROPERTY, attempts);
+            deadLetterMessage.setStringProperty(
+                    ORIGINAL_DESTINATION_PROPERTY, String.valueOf(message.getJMSDestination()));
+            deadLetterMessage.setStringProperty(ORIGINAL_MESSAGE_ID_PROPERTY, message.getJMSMessageID());
+            this.producer.sendMessage(deadLetterMessage);
+        } catch (JMSException | RuntimeException e) {
+            System.err.println("Error: Message could not be dead-lettered to " + this.deadLetterQueueName
+                    + " (" + reason + ": " + cause + ")");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Method that copies the body, the properties, the JMSCorrelationID and the JMSReplyTo
+     * of a received message into a new message, the properties of a received message are read-only
+     *
+     * @param message the received message
+     * @return Message that can be sent to the dead-letter queue
+     * @throws JMSException if something goes wrong with JMS
+     */
+    private Message copyMessage(Message message) throws JMSException {
+        // the broker only sends TextMessages, of other message types only the headers are kept
+        String messageBody = message instanceof TextMessage ? ((TextMessage) message).getText() : "";
+        Message copy = this.producer.createMessage(messageBody, message.getJMSReplyTo());
+        Enumeration<?> propertyNames = message.getPropertyNames();
+        while (propertyNames.hasMoreElements()) {
+            String propertyName = (String) propertyNames.nextElement();
+            copy.setObjectProperty(propertyName, message.getObjectProperty(propertyName));
+        }
+        copy.setJMSCorrelationID(message.getJMSCorrelationID());
+        return copy;
+    }
+
+    /**
+     * Method that lets the scheduled retries run, waiting at most the given time,
+     * and closes the producer of the dead-letter queue
+     *
+     * @param timeoutMillis how long to wait for the scheduled retries in milliseconds
+     */
+    public void close(long timeoutMillis) {
+        this.redeliveryScheduler.shutdown();
+        try {
+            this.redeliveryScheduler.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            this.producer.close();
+        } catch (JMSException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public String getDeadLetterQueueName() {
+        return this.deadLetterQueueName;
+    }
+
+    /**
+     * Method that returns the number of messages that were handled, including after a retry
+     *
+     * @return the number of handled messages
+     */
+    public long getHandled() {
+        return this.handled.get();
+    }
+
+    /**
+     * Method that returns the number of times a failed message was scheduled to be handled again
+     *
+     * @return the number of redeliveries
+     */
+    public long getRedelivered() {
+        return this.redelivered.get();
+    }
+
+    /**
+     * Method that returns the number of messages whose body could not be read or parsed
+     *
+     * @return the number of malformed messages
+     */
+    public long getMalformed() {
+        return this.malformed.get();
+    }
+
+    /**
+     * Method that returns the number of messages the handler failed on with an unexpected exception
+     *
+     * @return the number of failed messages
+     */
+    public long getFailed() {
+        return this.failed.get();
+    }
+
+    /**
+     * Method that returns the number of messages that were forwarded to the dead-letter queue
+     *
+     * @return the number of dead-lettered messages
+     */
+    public long getDeadLettered() {
+        return this.deadLettered.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%s: handled %d, redelivered %d, malformed %d, failed %d, dead-lettered %d",
+                this.deadLetterQueueName,
+                getHandled(),
+                getRedelivered(),
+                getMalformed(),
+                getFailed(),
+                getDeadLettered());
+    }
+}
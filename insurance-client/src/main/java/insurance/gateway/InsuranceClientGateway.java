@@ -1,24 +1,66 @@
 package insurance.gateway;
 
-import insurance.model.TreatmentCostsReply;
-import insurance.model.TreatmentCostsRequest;
+import model.client.QuotePriority;
+import model.client.TreatmentCostsReply;
+import model.client.TreatmentCostsRequest;
 
+import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Message;
+import javax.jms.MessageFormatException;
 import javax.jms.TextMessage;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A class that is responsible for delegating
  * production and consumption of JSM messages
  */
 public class InsuranceClientGateway {
+
+    /**
+     * Store how long a request through the callback waits for its reply,
+     * which is longer than the broker takes to answer or give up on a quote
+     */
+    private static final long DEFAULT_REPLY_TIMEOUT_MILLIS = 150_000;
+
+    /**
+     * Store how often a request the broker is too busy for is sent again and how long
+     * the first resend waits in milliseconds, every next resend waits twice as long
+     */
+    public static final int DEFAULT_BUSY_RETRIES = 5;
+    private static final long INITIAL_BUSY_BACKOFF_MILLIS = 250;
+
+    /**
+     * Store how often a reply that failed with a JMSException is handled again,
+     * how long the first retry waits in milliseconds and how long closing the gateway
+     * waits for the scheduled retries in milliseconds
+     */
+    private static final int MAX_REDELIVERIES = 3;
+    private static final long INITIAL_REDELIVERY_BACKOFF_MILLIS = 100;
+    private static final long CLOSE_TIMEOUT_MILLIS = 1_000;
+
+    /**
+     * Store the suffix of the queue the replies of a temporary reply queue are dead-lettered to,
+     * a temporary queue is gone with the client, so its dead-letter queue is named after the producer queue
+     */
+    private static final String REPLY_QUEUE_SUFFIX = ".replies";
+
     /**
-     * Store queue names
+     * Store the queue name of the producer and the destination replies are sent to,
+     * which is a temporary queue unless a named reply queue was given
      */
     private String producerQueueName;
-    private String consumerQueueName;
+    private Destination replyDestination;
 
     /**
      * Declare Consumer and Producer to delegate
@@ -33,64 +75,336 @@ public class InsuranceClientGateway {
     private TreatmentCostsSerializer treatmentCostsSerializer;
 
     /**
-     * Map TreatmentCostsRequest to an ID in order to distinguish which
-     * TreatmentCostsRequest corresponds to a received TreatmentCostsReply
+     * Map the correlation ID of every request that is waiting for its reply to the request
+     * and the future of its reply, an entry is removed as soon as the future completes or times out
+     */
+    private Map<String, PendingRequest> correlationToPendingRequestMap;
+
+    /**
+     * Declare the publisher that streams every received reply with its request
+     */
+    private TreatmentCostsReplyPublisher treatmentCostsReplyPublisher;
+
+    /**
+     * Declare the DeadLetterChannel that retries the replies that failed
+     * and forwards the malformed ones to the dead-letter queue
+     */
+    private DeadLetterChannel deadLetterChannel;
+
+    /**
+     * Declare the scheduler on which the requests time out and busy requests wait to be sent again
      */
-    private Map<String, TreatmentCostsRequest> correlationToTreatmentRequestMap;
+    private ScheduledThreadPoolExecutor replyTimeoutScheduler;
 
     /**
-     * Constructor that initializes the consumer, producer, correlationToTreatmentRequestMap,
-     * treatmentSerialized and sets a consumer message listener
+     * Declare the prefix and counter for the correlation IDs of requests
+     */
+    private String correlationIdPrefix;
+    private AtomicLong correlationIdGenerator;
+
+    /**
+     * Constructor that receives the replies on a temporary queue, which the JMS broker
+     * removes as soon as this gateway is closed or the client goes away
+     *
+     * @param producerQueueName the queue name for initializing the producer
+     * @throws JMSException if something goes wrong with JMS
+     */
+    public InsuranceClientGateway(String producerQueueName) throws JMSException {
+        this(producerQueueName, new Consumer(), producerQueueName + REPLY_QUEUE_SUFFIX);
+    }
+
+    /**
+     * Constructor that receives the replies on a named queue
      *
      * @param producerQueueName the queue name for initializing the producer
      * @param consumerQueueName the queue name for initializing the consumer
      * @throws JMSException if something goes wrong with JMS
      */
     public InsuranceClientGateway(String producerQueueName, String consumerQueueName) throws JMSException {
+        this(producerQueueName, new Consumer(consumerQueueName), consumerQueueName);
+    }
+
+    /**
+     * Constructor that initializes the producer, correlationToPendingRequestMap,
+     * treatmentSerialized, the DeadLetterChannel and sets a consumer message listener
+     *
+     * @param producerQueueName the queue name for initializing the producer
+     * @param consumer the consumer of the replies
+     * @param replyQueueName the name the dead-letter queue of the replies is derived from
+     * @throws JMSException if something goes wrong with JMS
+     */
+    private InsuranceClientGateway(String producerQueueName, Consumer consumer, String replyQueueName)
+            throws JMSException {
         // initialize all properties
         this.producerQueueName = producerQueueName;
-        this.consumerQueueName = consumerQueueName;
         this.producer = new Producer(producerQueueName);
-        this.consumer = new Consumer(consumerQueueName);
+        this.consumer = consumer;
+        this.replyDestination = consumer.getDestination();
         this.treatmentCostsSerializer = new TreatmentCostsSerializer();
-        this.correlationToTreatmentRequestMap = new HashMap<>();
+        this.correlationToPendingRequestMap = new ConcurrentHashMap<>();
+        this.treatmentCostsReplyPublisher = new TreatmentCostsReplyPublisher();
+        this.correlationIdPrefix = UUID.randomUUID() + ":";
+        this.correlationIdGenerator = new AtomicLong();
+        this.replyTimeoutScheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "reply-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // the timeout of every answered request is cancelled, do not keep it until it would have fired
+        this.replyTimeoutScheduler.setRemoveOnCancelPolicy(true);
+        this.deadLetterChannel = new DeadLetterChannel(
+                replyQueueName + DeadLetterChannel.DEAD_LETTER_QUEUE_SUFFIX,
+                MAX_REDELIVERIES,
+                INITIAL_REDELIVERY_BACKOFF_MILLIS);
 
         /*
           Event listener that receives the JMS message, deserializes the body to TreatmentCostsReply,
-          finds corresponding TreatmentCostsRequest and pushes both to parent class through a callback
+          completes the future of the request with the same correlation ID and publishes both
+          to the subscribers, waiting for their demand before the next message is consumed.
+          A busy reply is no quote, it fails the future and is not published. Failures of the
+          listener are retried or dead-lettered by the DeadLetterChannel.
          */
-        this.consumer.setConsumerMessageListener(message -> {
+        this.consumer.setConsumerMessageListener(this.deadLetterChannel.guard(message -> {
             try {
                 // typecast message to TextMessage
+                if (!(message instanceof TextMessage)) {
+                    throw new MessageFormatException("Message " + message.getJMSMessageID() + " is no TextMessage.");
+                }
                 TextMessage msg = (TextMessage) message;
                 // deserialize the body of the message to TreatmentCostsReply
                 TreatmentCostsReply treatmentCostsReply =
                         this.treatmentCostsSerializer.deserializeTreatmentCostsReplyJSON(msg.getText());
-                // get TreatmentCostsRequest mapped to the JMSCorrelationID of the message
-                TreatmentCostsRequest treatmentCostsRequest =
-                        this.correlationToTreatmentRequestMap.get(msg.getJMSCorrelationID());
-                // push TreatmentCostsRequest and TreatmentCostsReply to parent class through callback
+                // get the request mapped to the JMSCorrelationID of the message
+                PendingRequest pendingRequest =
+                        this.correlationToPendingRequestMap.remove(msg.getJMSCorrelationID());
+                // the request already timed out
+                if (pendingRequest == null) return;
+                if (treatmentCostsReply.isBusy()) {
+                    pendingRequest.pendingReply.completeExceptionally(new BrokerBusyException(
+                            "Broker is too busy for " + pendingRequest.treatmentCostsRequest));
+                    return;
+                }
+                if (treatmentCostsReply.isUnavailable()) {
+                    pendingRequest.pendingReply.completeExceptionally(new QuoteUnavailableException(
+                            "No quote available for " + pendingRequest.treatmentCostsRequest));
+                    return;
+                }
+                pendingRequest.pendingReply.complete(treatmentCostsReply);
+                // stream the reply, which blocks this consumer until the subscribers want more
+                if (this.treatmentCostsReplyPublisher.hasSubscribers()) {
+                    this.treatmentCostsReplyPublisher.publish(
+                            new TreatmentCostsQuote(pendingRequest.treatmentCostsRequest, treatmentCostsReply));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+    }
+
+    /**
+     * Method that sends a TreatmentCostsRequest and pushes its TreatmentCostsReply
+     * through the callback. A request the broker is too busy for is sent again after
+     * a backoff. If no reply arrives in time, the broker stays busy or cannot price the request
+     * the request is dropped.
+     *
+     * @param treatmentCostsRequest TreatmentCostsRequest to be send
+     * @throws JMSException if something goes wrong with JMS
+     */
+    public void requestTreatmentCostApproximation(TreatmentCostsRequest treatmentCostsRequest) throws JMSException {
+        requestTreatmentCostApproximationAsync(
+                treatmentCostsRequest,
+                DEFAULT_REPLY_TIMEOUT_MILLIS,
+                DEFAULT_BUSY_RETRIES
+        ).whenComplete((treatmentCostsReply, throwable) -> {
+            if (throwable == null) {
                 onTreatmentCostsReplyArrived(treatmentCostsRequest, treatmentCostsReply);
-            } catch (JMSException e) { e.printStackTrace(); }
+            } else if (throwable instanceof BrokerBusyException) {
+                System.err.println("Error: Broker stayed too busy for " + treatmentCostsRequest);
+            } else if (throwable instanceof QuoteUnavailableException) {
+                System.err.println("Error: No quote available for " + treatmentCostsRequest);
+            } else {
+                System.err.println("Error: No reply arrived in time to " + treatmentCostsRequest);
+            }
+        });
+    }
+
+    /**
+     * Method that sends a TreatmentCostsRequest like requestTreatmentCostApproximationAsync and
+     * sends it again when the broker is too busy for it, waiting twice as long before every resend
+     *
+     * @param treatmentCostsRequest TreatmentCostsRequest to be send
+     * @param timeoutMillis how long every attempt waits for its reply in milliseconds
+     * @param maxBusyRetries how often the request is sent again when the broker is too busy
+     * @return CompletableFuture that completes with the TreatmentCostsReply, or exceptionally with
+     * a BrokerBusyException if the broker stays busy, a QuoteUnavailableException if the broker
+     * cannot price the request or a TimeoutException if no reply arrives in time
+     * @throws JMSException if the first attempt cannot be sent
+     */
+    public CompletableFuture<TreatmentCostsReply> requestTreatmentCostApproximationAsync(
+            TreatmentCostsRequest treatmentCostsRequest,
+            long timeoutMillis,
+            int maxBusyRetries
+    ) throws JMSException {
+        CompletableFuture<TreatmentCostsReply> treatmentCostsReplyFuture = new CompletableFuture<>();
+        retryWhenBusy(
+                treatmentCostsRequest,
+                requestTreatmentCostApproximationAsync(treatmentCostsRequest, timeoutMillis),
+                timeoutMillis,
+                maxBusyRetries,
+                INITIAL_BUSY_BACKOFF_MILLIS,
+                treatmentCostsReplyFuture);
+        return treatmentCostsReplyFuture;
+    }
+
+    /**
+     * Method that completes a future with the outcome of an attempt, unless the broker
+     * was too busy for the attempt and retries are left, then the request is sent again
+     * on the scheduler after the backoff
+     *
+     * @param treatmentCostsRequest the request of the attempt
+     * @param attempt the future of the reply of the attempt
+     * @param timeoutMillis how long every attempt waits for its reply in milliseconds
+     * @param busyRetries how often the request can still be sent again
+     * @param backoffMillis how long to wait before the next resend in milliseconds
+     * @param treatmentCostsReplyFuture the future to complete
+     */
+    private void retryWhenBusy(
+            TreatmentCostsRequest treatmentCostsRequest,
+            CompletableFuture<TreatmentCostsReply> attempt,
+            long timeoutMillis,
+            int busyRetries,
+            long backoffMillis,
+            CompletableFuture<TreatmentCostsReply> treatmentCostsReplyFuture
+    ) {
+        attempt.whenComplete((treatmentCostsReply, throwable) -> {
+            if (throwable == null) {
+                treatmentCostsReplyFuture.complete(treatmentCostsReply);
+                return;
+            }
+            if (!(throwable instanceof BrokerBusyException) || busyRetries == 0) {
+                treatmentCostsReplyFuture.completeExceptionally(throwable);
+                return;
+            }
+            try {
+                this.replyTimeoutScheduler.schedule(() -> {
+                    try {
+                        retryWhenBusy(
+                                treatmentCostsRequest,
+                                requestTreatmentCostApproximationAsync(treatmentCostsRequest, timeoutMillis),
+                                timeoutMillis,
+                                busyRetries - 1,
+                                backoffMillis * 2,
+                                treatmentCostsReplyFuture);
+                    } catch (JMSException e) {
+                        treatmentCostsReplyFuture.completeExceptionally(e);
+                    }
+                }, backoffMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // the gateway is closed, the request is not sent again
+                treatmentCostsReplyFuture.completeExceptionally(throwable);
+            }
         });
     }
 
     /**
-     * Method that serializes a TreatmentCostsRequest, creates the JMS message,
-     * sends the message and maps the JMSMessageID to the TreatmentCostsRequest
+     * Method that serializes a TreatmentCostsRequest, creates the JMS message with
+     * a new correlation ID, maps the correlation ID to the future of the reply
+     * and sends the message with the JMSPriority of the priority class of the request.
+     * The broker replies with the same correlation ID. The time the reply consumer is held
+     * back by the subscribers of the publisher does not count towards the timeout.
      *
      * @param treatmentCostsRequest TreatmentCostsRequest to be send
+     * @param timeoutMillis how long to wait for the reply in milliseconds
+     * @return CompletableFuture that completes with the TreatmentCostsReply, or exceptionally with
+     * a BrokerBusyException if the broker is too busy, a QuoteUnavailableException if the broker
+     * cannot price the request or a TimeoutException if no reply arrives in time
      * @throws JMSException if something goes wrong with JMS
      */
-    public void requestTreatmentCostApproximation(TreatmentCostsRequest treatmentCostsRequest) throws JMSException {
+    public CompletableFuture<TreatmentCostsReply> requestTreatmentCostApproximationAsync(
+            TreatmentCostsRequest treatmentCostsRequest,
+            long timeoutMillis
+    ) throws JMSException {
         // serialize the TreatmentCostsRequest to JSON string
         String treatmentJson = this.treatmentCostsSerializer.serializeTreatmentCostsRequest(treatmentCostsRequest);
         // create the message
-        Message message = this.producer.createMessage(treatmentJson, this.consumerQueueName);
-        // send the message
-        this.producer.sendMessage(message);
-        // save necessary information in map
-        this.correlationToTreatmentRequestMap.put(message.getJMSMessageID(), treatmentCostsRequest);
+        Message message = this.producer.createMessage(treatmentJson, this.replyDestination);
+        String correlationId = this.correlationIdPrefix + this.correlationIdGenerator.incrementAndGet();
+        message.setJMSCorrelationID(correlationId);
+        // map the future before sending, the reply can arrive right away
+        CompletableFuture<TreatmentCostsReply> pendingReply = new CompletableFuture<>();
+        this.correlationToPendingRequestMap.put(correlationId, new PendingRequest(treatmentCostsRequest, pendingReply));
+        pendingReply.whenComplete(
+                (treatmentCostsReply, throwable) -> this.correlationToPendingRequestMap.remove(correlationId));
+        scheduleReplyTimeout(pendingReply, timeoutMillis, this.treatmentCostsReplyPublisher.getPublishingNanos());
+        // send the message, a request without priority class gets the default JMSPriority
+        QuotePriority priority = treatmentCostsRequest.getPriority();
+        try {
+            this.producer.sendMessage(
+                    message,
+                    priority != null ? priority.getJMSPriority() : Message.DEFAULT_PRIORITY);
+        } catch (JMSException e) {
+            this.correlationToPendingRequestMap.remove(correlationId);
+            pendingReply.completeExceptionally(e);
+            throw e;
+        }
+        return pendingReply;
+    }
+
+    /**
+     * Method that times out the future of a reply after the given time. While the subscribers
+     * of the publisher hold back the reply consumer no reply can be received, so the timeout
+     * is postponed by as long as they held it back. The timeout is cancelled when the reply arrives.
+     *
+     * @param pendingReply the future of the reply
+     * @param timeoutMillis how long to wait for the reply in milliseconds
+     * @param publishingNanos the time spent publishing when the wait started in nanoseconds
+     */
+    private void scheduleReplyTimeout(
+            CompletableFuture<TreatmentCostsReply> pendingReply,
+            long timeoutMillis,
+            long publishingNanos
+    ) {
+        ScheduledFuture<?> replyTimeout = this.replyTimeoutScheduler.schedule(() -> {
+            if (pendingReply.isDone()) return;
+            long currentPublishingNanos = this.treatmentCostsReplyPublisher.getPublishingNanos();
+            long heldBackMillis = TimeUnit.NANOSECONDS.toMillis(currentPublishingNanos - publishingNanos);
+            if (heldBackMillis > 0) {
+                scheduleReplyTimeout(pendingReply, heldBackMillis, currentPublishingNanos);
+                return;
+            }
+            pendingReply.completeExceptionally(new TimeoutException("No reply arrived in time."));
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        pendingReply.whenComplete((treatmentCostsReply, throwable) -> replyTimeout.cancel(false));
+    }
+
+    /**
+     * Method that cancels every request that is still waiting for its reply, completes
+     * the subscribers of the publisher and closes the connections. A temporary reply
+     * queue is deleted, so no dead destination is left behind on the JMS broker.
+     *
+     * @throws JMSException if something goes wrong with JMS
+     */
+    public void close() throws JMSException {
+        // release a listener that waits for demand first, closing the consumer waits for it
+        this.treatmentCostsReplyPublisher.close();
+        this.consumer.close();
+        this.deadLetterChannel.close(CLOSE_TIMEOUT_MILLIS);
+        this.producer.close();
+        this.replyTimeoutScheduler.shutdownNow();
+        for (PendingRequest pendingRequest : this.correlationToPendingRequestMap.values()) {
+            pendingRequest.pendingReply.cancel(false);
+        }
+    }
+
+    /**
+     * Method that returns the publisher that streams every received TreatmentCostsReply
+     * together with its TreatmentCostsRequest. As long as a subscriber has no demand,
+     * no further reply is consumed from the reply queue.
+     *
+     * @return Flow.Publisher of TreatmentCostsQuotes
+     */
+    public Flow.Publisher<TreatmentCostsQuote> getTreatmentCostsReplyPublisher() {
+        return this.treatmentCostsReplyPublisher;
     }
 
     /**
@@ -105,4 +419,20 @@ public class InsuranceClientGateway {
             TreatmentCostsRequest treatmentCostsRequest,
             TreatmentCostsReply treatmentCostsReply
     ) {}
+
+    /**
+     * A request that is waiting for its reply
+     */
+    private static class PendingRequest {
+        private final TreatmentCostsRequest treatmentCostsRequest;
+        private final CompletableFuture<TreatmentCostsReply> pendingReply;
+
+        private PendingRequest(
+                TreatmentCostsRequest treatmentCostsRequest,
+                CompletableFuture<TreatmentCostsReply> pendingReply
+        ) {
+            this.treatmentCostsRequest = treatmentCostsRequest;
+            this.pendingReply = pendingReply;
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package insurance.gateway;
 
+import model.messaging.JmsProvider;
+
 import javax.jms.*;
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -12,11 +14,6 @@ import java.util.Properties;
  */
 public class Producer {
 
-    /**
-     * String that holds the JMS provider url
-     */
-    private static final String JMS_PROVIDER_URL = "tcp://localhost:61616";
-
     /**
      * Declare variable that will hold the objects necessary
      * for making the connection to JMS, creating JMS messages
@@ -34,14 +31,16 @@ public class Producer {
      *
      * @param queueName String that holds the queue name of the queue
      *                  which the Producer is going to communicate with
+     * @throws JMSException if the JMS broker cannot be reached within the timeout of the JMS provider url
+     *                      or something else goes wrong with JMS
      */
-    public Producer(String queueName) {
+    public Producer(String queueName) throws JMSException {
         try {
             // set properties
             Properties props = new Properties();
             props.setProperty(Context.INITIAL_CONTEXT_FACTORY,
                     "org.apache.activemq.jndi.ActiveMQInitialContextFactory");
-            props.setProperty(Context.PROVIDER_URL, JMS_PROVIDER_URL);
+            props.setProperty(Context.PROVIDER_URL, JmsProvider.getProviderUrl());
             props.put(("queue." + queueName), queueName);
 
             // initialize connection and session
@@ -54,8 +53,14 @@ public class Producer {
             // initialize destination and producer
             this.destination = (Destination) jndiContext.lookup(queueName);
             this.producer = session.createProducer(this.destination);
-        } catch (JMSException | NamingException e) {
-            e.printStackTrace();
+        } catch (JMSException e) {
+            closeAfterFailedSetup();
+            throw e;
+        } catch (NamingException e) {
+            closeAfterFailedSetup();
+            JMSException jmsException = new JMSException("JMS provider cannot be looked up: " + e.getMessage());
+            jmsException.setLinkedException(e);
+            throw jmsException;
         }
     }
 
@@ -64,12 +69,13 @@ public class Producer {
      * containing a given message body
      *
      * @param messageBody String contents to be wrapped with a JMS message
+     * @param replyDestination the destination the reply has to be sent to
      * @return Message object containing the message body
      * @throws JMSException if something goes wrong with JMS
      */
-    public Message createMessage(String messageBody, String returnQueueName) throws JMSException {
+    public Message createMessage(String messageBody, Destination replyDestination) throws JMSException {
         Message message = this.session.createTextMessage(messageBody);
-        message.setJMSReplyTo(this.session.createQueue(returnQueueName));
+        message.setJMSReplyTo(replyDestination);
         return message;
     }
 
@@ -80,7 +86,41 @@ public class Producer {
      * @param message to be send
      * @throws JMSException if something goes wrong with JMS
      */
-    public void sendMessage(Message message) throws JMSException {
+    public synchronized void sendMessage(Message message) throws JMSException {
         this.producer.send(message);
     }
+
+    /**
+     * Method that sends a given message with a given JMSPriority to the
+     * queue destination initialized in the constructor
+     *
+     * @param message to be send
+     * @param priority the JMSPriority between 0 and 9
+     * @throws JMSException if something goes wrong with JMS
+     */
+    public synchronized void sendMessage(Message message, int priority) throws JMSException {
+        this.producer.send(message, this.producer.getDeliveryMode(), priority, this.producer.getTimeToLive());
+    }
+
+    /**
+     * Method that closes the connection
+     *
+     * @throws JMSException if something goes wrong with JMS
+     */
+    public void close() throws JMSException {
+        this.connection.close();
+    }
+
+    /**
+     * Method that closes the connection after its setup failed,
+     * otherwise the failover transport keeps reconnecting in the background
+     */
+    private void closeAfterFailedSetup() {
+        if (this.connection == null) return;
+        try {
+            this.connection.close();
+        } catch (JMSException e) {
+            // the setup already failed, its exception is the one that is thrown
+        }
+    }
 }
@@ -0,0 +1,19 @@
+package insurance.gateway;
+
+/**
+ * Exception that fails the reply of a request the broker accepted but could not price,
+ * because no hospital replied in time or no transport price could be found.
+ */
+public class QuoteUnavailableException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor that sets the reason why no quote is available
+     *
+     * @param message the reason why no quote is available
+     */
+    public QuoteUnavailableException(String message) {
+        super(message);
+    }
+}
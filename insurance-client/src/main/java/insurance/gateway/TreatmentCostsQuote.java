@@ -0,0 +1,43 @@
+package insurance.gateway;
+
+import model.client.TreatmentCostsReply;
+import model.client.TreatmentCostsRequest;
+
+/**
+ * A class that pairs a TreatmentCostsRequest with the TreatmentCostsReply it received
+ */
+public final class TreatmentCostsQuote {
+
+    /**
+     * Store the request and its reply
+     */
+    private final TreatmentCostsRequest treatmentCostsRequest;
+    private final TreatmentCostsReply treatmentCostsReply;
+
+    /**
+     * Constructor that sets the request and its reply
+     *
+     * @param treatmentCostsRequest the request that was sent
+     * @param treatmentCostsReply the reply the request received
+     */
+    public TreatmentCostsQuote(
+            TreatmentCostsRequest treatmentCostsRequest,
+            TreatmentCostsReply treatmentCostsReply
+    ) {
+        this.treatmentCostsRequest = treatmentCostsRequest;
+        this.treatmentCostsReply = treatmentCostsReply;
+    }
+
+    public TreatmentCostsRequest getTreatmentCostsRequest() {
+        return treatmentCostsRequest;
+    }
+
+    public TreatmentCostsReply getTreatmentCostsReply() {
+        return treatmentCostsReply;
+    }
+
+    @Override
+    public String toString() {
+        return treatmentCostsRequest + " -> " + treatmentCostsReply;
+    }
+}
@@ -0,0 +1,136 @@
+package insurance.gateway;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+
+/**
+ * A Flow.Publisher of every TreatmentCostsQuote an InsuranceClientGateway receives.
+ * Publishing blocks the JMS consumer thread until every subscriber has requested
+ * another quote, so a slow subscriber pauses the consumption of the reply queue
+ * instead of letting received replies pile up in memory.
+ */
+public class TreatmentCostsReplyPublisher implements Flow.Publisher<TreatmentCostsQuote> {
+
+    /**
+     * Store the subscriptions that are not cancelled
+     */
+    private final List<QuoteSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * Store how long publishing held back the JMS consumer thread in nanoseconds
+     * and when the publishing in progress started, which is 0 while nothing is published
+     */
+    private long publishingNanos;
+    private long publishingSinceNanos;
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super TreatmentCostsQuote> subscriber) {
+        Objects.requireNonNull(subscriber, "Subscriber cannot be null.");
+        QuoteSubscription subscription = new QuoteSubscription(subscriber);
+        this.subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * Method that checks if anyone subscribed to the quotes
+     *
+     * @return true if there is at least one subscription, otherwise false
+     */
+    boolean hasSubscribers() {
+        return !this.subscriptions.isEmpty();
+    }
+
+    /**
+     * Method that pushes a quote to every subscriber, waiting
+     * for each subscriber until it has requested another quote
+     *
+     * @param treatmentCostsQuote the quote to publish
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    void publish(TreatmentCostsQuote treatmentCostsQuote) throws InterruptedException {
+        synchronized (this) {
+            this.publishingSinceNanos = System.nanoTime();
+        }
+        try {
+            for (QuoteSubscription subscription : this.subscriptions) {
+                subscription.awaitDemandAndSend(treatmentCostsQuote);
+            }
+        } finally {
+            synchronized (this) {
+                this.publishingNanos += System.nanoTime() - this.publishingSinceNanos;
+                this.publishingSinceNanos = 0;
+            }
+        }
+    }
+
+    /**
+     * Method that returns how long publishing held back the JMS consumer thread so far,
+     * including the publishing in progress. No reply is received during that time.
+     *
+     * @return the time spent publishing in nanoseconds
+     */
+    synchronized long getPublishingNanos() {
+        if (this.publishingSinceNanos == 0) return this.publishingNanos;
+        return this.publishingNanos + System.nanoTime() - this.publishingSinceNanos;
+    }
+
+    /**
+     * Method that tells every subscriber that no more quotes will be published
+     */
+    void close() {
+        for (QuoteSubscription subscription : this.subscriptions) {
+            subscription.cancel();
+            subscription.subscriber.onComplete();
+        }
+    }
+
+    /**
+     * The subscription of a single subscriber, which keeps track of its demand
+     */
+    private class QuoteSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super TreatmentCostsQuote> subscriber;
+        private long demand;
+        private boolean cancelled;
+
+        private QuoteSubscription(Flow.Subscriber<? super TreatmentCostsQuote> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                this.subscriber.onError(new IllegalArgumentException("Requested number of quotes must be positive."));
+                return;
+            }
+            synchronized (this) {
+                if (this.cancelled) return;
+                this.demand = this.demand + n < 0 ? Long.MAX_VALUE : this.demand + n;
+                notifyAll();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                this.cancelled = true;
+                notifyAll();
+            }
+            subscriptions.remove(this);
+        }
+
+        private void awaitDemandAndSend(TreatmentCostsQuote treatmentCostsQuote) throws InterruptedException {
+            synchronized (this) {
+                while (this.demand == 0 && !this.cancelled) {
+                    wait();
+                }
+                if (this.cancelled) return;
+                this.demand--;
+            }
+            // deliver outside the lock, the subscriber may request more from onNext
+            this.subscriber.onNext(treatmentCostsQuote);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package model.serialization;
+
+import com.google.gson.Gson;
+import model.client.QuotePriority;
+import model.client.TreatmentCostsRequest;
+import model.hospital.Address;
+import model.hospital.HospitalCostsReply;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark that compares the streaming TypeAdapters of ModelSerializer with the reflective
+ * Gson the gateways used before, for a request a client sends and a reply a hospital sends.
+ * Run with ./gradlew :model:jmh, the gc profiler reports the allocated bytes per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelSerializerBenchmark {
+
+    /**
+     * Declare the Gson with the streaming TypeAdapters and the Gson that uses reflection
+     */
+    private Gson streamingGson;
+    private Gson reflectiveGson;
+
+    /**
+     * Declare the objects to serialize and their JSON, as written by each Gson
+     */
+    private TreatmentCostsRequest treatmentCostsRequest;
+    private HospitalCostsReply hospitalCostsReply;
+    private String streamingTreatmentCostsRequestJson;
+    private String reflectiveTreatmentCostsRequestJson;
+    private String streamingHospitalCostsReplyJson;
+    private String reflectiveHospitalCostsReplyJson;
+
+    @Setup
+    public void setUp() {
+        this.streamingGson = ModelSerializer.getGson();
+        this.reflectiveGson = new Gson();
+        this.treatmentCostsRequest = new TreatmentCostsRequest(123456789, 42, "ORT125", 30, QuotePriority.NORMAL);
+        this.hospitalCostsReply = new HospitalCostsReply(
+                1250.75, "Catharina Ziekenhuis", new Address("Michelangelolaan", 2, "Eindhoven"));
+        this.streamingTreatmentCostsRequestJson = this.streamingGson.toJson(this.treatmentCostsRequest);
+        this.reflectiveTreatmentCostsRequestJson = this.reflectiveGson.toJson(this.treatmentCostsRequest);
+        this.streamingHospitalCostsReplyJson = this.streamingGson.toJson(this.hospitalCostsReply);
+        this.reflectiveHospitalCostsReplyJson = this.reflectiveGson.toJson(this.hospitalCostsReply);
+    }
+
+    @Benchmark
+    public String streamingSerializeTreatmentCostsRequest() {
+        return this.streamingGson.toJson(this.treatmentCostsRequest);
+    }
+
+    @Benchmark
+    public String reflectiveSerializeTreatmentCostsRequest() {
+        return this.reflectiveGson.toJson(this.treatmentCostsRequest);
+    }
+
+    @Benchmark
+    public TreatmentCostsRequest streamingDeserializeTreatmentCostsRequest() {
+        return this.streamingGson.fromJson(this.streamingTreatmentCostsRequestJson, TreatmentCostsRequest.class);
+    }
+
+    @Benchmark
+    public TreatmentCostsRequest reflectiveDeserializeTreatmentCostsRequest() {
+        return this.reflectiveGson.fromJson(this.reflectiveTreatmentCostsRequestJson, TreatmentCostsRequest.class);
+    }
+
+    @Benchmark
+    public String streamingSerializeHospitalCostsReply() {
+        return this.streamingGson.toJson(this.hospitalCostsReply);
+    }
+
+    @Benchmark
+    public String reflectiveSerializeHospitalCostsReply() {
+        return this.reflectiveGson.toJson(this.hospitalCostsReply);
+    }
+
+    @Benchmark
+    public HospitalCostsReply streamingDeserializeHospitalCostsReply() {
+        return this.streamingGson.fromJson(this.streamingHospitalCostsReplyJson, HospitalCostsReply.class);
+    }
+
+    @Benchmark
+    public HospitalCostsReply reflectiveDeserializeHospitalCostsReply() {
+        return this.reflectiveGson.fromJson(this.reflectiveHospitalCostsReplyJson, HospitalCostsReply.class);
+    }
+}
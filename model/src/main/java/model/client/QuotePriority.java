@@ -0,0 +1,45 @@
+package model.client;
+
+/**
+ * Priority class of a TreatmentCostsRequest, which decides the JMSPriority of every
+ * message of the quote and the order in which the broker handles the quote
+ */
+public enum QuotePriority {
+
+    /**
+     * A quote that needs an answer within a strict window
+     */
+    URGENT(9),
+
+    /**
+     * A quote of an insurance client that is waiting for it
+     */
+    NORMAL(4),
+
+    /**
+     * A quote that can wait, e.g. a bulk re-quote
+     */
+    BULK(1);
+
+    private final int jmsPriority;
+
+    QuotePriority(int jmsPriority) {
+        this.jmsPriority = jmsPriority;
+    }
+
+    public int getJMSPriority() {
+        return jmsPriority;
+    }
+
+    /**
+     * Method that finds the priority class of a JMSPriority
+     *
+     * @param jmsPriority the JMSPriority between 0 and 9
+     * @return URGENT from 7, BULK up to 2, otherwise NORMAL
+     */
+    public static QuotePriority fromJMSPriority(int jmsPriority) {
+        if (jmsPriority >= 7) return URGENT;
+        if (jmsPriority <= 2) return BULK;
+        return NORMAL;
+    }
+}
@@ -0,0 +1,109 @@
+package model.client;
+
+import java.text.DecimalFormat;
+import java.util.Objects;
+
+/**
+ * Immutable reply to a TreatmentCostsRequest with the cheapest hospital and the transport costs,
+ * a busy reply when the broker has too many requests in flight to accept another one,
+ * or an unavailable reply when the broker accepted the request but could not price it
+ */
+public final class TreatmentCostsReply {
+
+    private final double hospitalPrice;
+    private final double transportPrice;
+    private final String hospitalName;
+    private final boolean busy;
+    private final boolean unavailable;
+
+    public TreatmentCostsReply(double hospitalPrice, double transportPrice, String hospitalName) {
+        this(hospitalPrice, transportPrice, hospitalName, false);
+    }
+
+    public TreatmentCostsReply(double hospitalPrice, double transportPrice, String hospitalName, boolean busy) {
+        this(hospitalPrice, transportPrice, hospitalName, busy, false);
+    }
+
+    public TreatmentCostsReply(
+            double hospitalPrice,
+            double transportPrice,
+            String hospitalName,
+            boolean busy,
+            boolean unavailable
+    ) {
+        this.hospitalPrice = hospitalPrice;
+        this.transportPrice = transportPrice;
+        this.hospitalName = hospitalName != null ? hospitalName.intern() : null;
+        this.busy = busy;
+        this.unavailable = unavailable;
+    }
+
+    /**
+     * Method that creates the reply of a request the broker did not accept because it is busy
+     *
+     * @return TreatmentCostsReply without prices that is marked as busy
+     */
+    public static TreatmentCostsReply busy() {
+        return new TreatmentCostsReply(0, 0, null, true);
+    }
+
+    /**
+     * Method that creates the reply of a request the broker accepted but could not price,
+     * e.g. because no hospital replied before the deadline or the transport price is unknown
+     *
+     * @return TreatmentCostsReply without prices that is marked as unavailable
+     */
+    public static TreatmentCostsReply unavailable() {
+        return new TreatmentCostsReply(0, 0, null, false, true);
+    }
+
+    public double getHospitalPrice() {
+        return hospitalPrice;
+    }
+
+    public double getTransportPrice() {
+        return transportPrice;
+    }
+
+    public String getHospitalName() {
+        return hospitalName;
+    }
+
+    public boolean isBusy() {
+        return busy;
+    }
+
+    public boolean isUnavailable() {
+        return unavailable;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TreatmentCostsReply)) return false;
+        TreatmentCostsReply that = (TreatmentCostsReply) o;
+        return Double.compare(hospitalPrice, that.hospitalPrice) == 0
+                && Double.compare(transportPrice, that.transportPrice) == 0
+                && Objects.equals(hospitalName, that.hospitalName)
+                && busy == that.busy
+                && unavailable == that.unavailable;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Double.hashCode(hospitalPrice);
+        result = 31 * result + Double.hashCode(transportPrice);
+        result = 31 * result + Objects.hashCode(hospitalName);
+        result = 31 * result + Boolean.hashCode(busy);
+        result = 31 * result + Boolean.hashCode(unavailable);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        if (busy) return "[busy, try again later]";
+        if (unavailable) return "[no quote available]";
+        DecimalFormat df = new DecimalFormat("####0.00");
+        return "["+df.format(hospitalPrice) + "e]-[" + df.format(transportPrice) + "e]-[" + hospitalName+"]";
+    }
+}
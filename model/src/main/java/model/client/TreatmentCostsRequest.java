@@ -0,0 +1,99 @@
+package model.client;
+
+import java.util.Objects;
+
+/**
+ * Immutable request of an insurance client for the costs of a treatment,
+ * optionally with a priority class, otherwise the broker classifies it by its treatment code
+ */
+public final class TreatmentCostsRequest {
+
+    private final int ssn; // social security number
+    private final int age;
+    private final String treatmentCode;
+    private final int transportDistance;
+    private final QuotePriority priority;
+
+    public TreatmentCostsRequest(int ssn, int age, String treatmentCode, int transportDistance) {
+        this(ssn, age, treatmentCode, transportDistance, null);
+    }
+
+    public TreatmentCostsRequest(
+            int ssn,
+            int age,
+            String treatmentCode,
+            int transportDistance,
+            QuotePriority priority
+    ) {
+        this.ssn = ssn;
+        this.age = age;
+        this.treatmentCode = treatmentCode != null ? treatmentCode.intern() : null;
+        this.transportDistance = transportDistance;
+        this.priority = priority;
+    }
+
+    public TreatmentCostsRequest(int ssn, String treatmentCode) {
+        this(ssn, 0, treatmentCode, 0);
+    }
+
+    public int getSsn() {
+        return ssn;
+    }
+
+    public int getAge() {
+        return age;
+    }
+
+    public String getTreatmentCode() {
+        return treatmentCode;
+    }
+
+    public int getTransportDistance() {
+        return transportDistance;
+    }
+
+    /**
+     * @return the priority class of the request, or null if the broker classifies it
+     */
+    public QuotePriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Method that creates a copy of this request with a priority class
+     *
+     * @param priority the priority class of the copy
+     * @return TreatmentCostsRequest with the same fields and the given priority class
+     */
+    public TreatmentCostsRequest withPriority(QuotePriority priority) {
+        return new TreatmentCostsRequest(ssn, age, treatmentCode, transportDistance, priority);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TreatmentCostsRequest)) return false;
+        TreatmentCostsRequest that = (TreatmentCostsRequest) o;
+        return ssn == that.ssn
+                && age == that.age
+                && transportDistance == that.transportDistance
+                && Objects.equals(treatmentCode, that.treatmentCode)
+                && priority == that.priority;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = ssn;
+        result = 31 * result + age;
+        result = 31 * result + Objects.hashCode(treatmentCode);
+        result = 31 * result + transportDistance;
+        result = 31 * result + Objects.hashCode(priority);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        String line = "["+ssn + "]-[" + age + "]-[" +treatmentCode + "]-[" + transportDistance + "km]";
+        return priority != null ? line + "-[" + priority + "]" : line;
+    }
+}
@@ -0,0 +1,54 @@
+package model.hospital;
+
+import java.util.Objects;
+
+/**
+ * Immutable address of a hospital
+ */
+public final class Address {
+
+    private final String street;
+    private final int number;
+    private final String city;
+
+    public Address(String street, int number, String city) {
+        this.street = street;
+        this.number = number;
+        this.city = city;
+    }
+
+    public String getStreet() {
+        return street;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Address)) return false;
+        Address that = (Address) o;
+        return number == that.number
+                && Objects.equals(street, that.street)
+                && Objects.equals(city, that.city);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Objects.hashCode(street);
+        result = 31 * result + number;
+        result = 31 * result + Objects.hashCode(city);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return street + " " + number + ", " + city;
+    }
+}
@@ -0,0 +1,66 @@
+package model.hospital;
+
+import java.text.DecimalFormat;
+import java.util.Objects;
+
+/**
+ * Immutable reply of a hospital to a HospitalCostsRequest
+ */
+public final class HospitalCostsReply {
+
+    private final double price;
+    private final String hospitalName;
+    private final Address address;
+
+    public HospitalCostsReply(double price, String hospitalName, Address address) {
+        this.price = price;
+        this.hospitalName = hospitalName != null ? hospitalName.intern() : null;
+        this.address = address;
+    }
+
+    /**
+     * Method that creates a copy of this reply without the Address,
+     * for a receiver that does not need the address of the hospital
+     *
+     * @return HospitalCostsReply without Address
+     */
+    public HospitalCostsReply withoutAddress() {
+        return new HospitalCostsReply(price, hospitalName, null);
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public String getHospitalName() {
+        return hospitalName;
+    }
+
+    public Address getAddress() {
+        return address;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof HospitalCostsReply)) return false;
+        HospitalCostsReply that = (HospitalCostsReply) o;
+        return Double.compare(price, that.price) == 0
+                && Objects.equals(hospitalName, that.hospitalName)
+                && Objects.equals(address, that.address);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Double.hashCode(price);
+        result = 31 * result + Objects.hashCode(hospitalName);
+        result = 31 * result + Objects.hashCode(address);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        DecimalFormat df = new DecimalFormat("####0.00");
+        return "["+df.format(price) + "e]-[" + address+"]";
+    }
+}
@@ -0,0 +1,73 @@
+package model.hospital;
+
+import java.util.Objects;
+
+/**
+ * Immutable HospitalCostsReply in a batch message,
+ * together with the IDs it is correlated with and its JMSPriority,
+ * a batch message is sent with the highest JMSPriority of its items
+ */
+public final class HospitalCostsReplyBatchItem {
+
+    /**
+     * Store the JMSPriority of an item whose priority is not known, which is the JMS default
+     */
+    public static final int DEFAULT_PRIORITY = 4;
+
+    private final String correlationID;
+    private final long aggregationID;
+    private final HospitalCostsReply reply;
+    private final int priority;
+
+    public HospitalCostsReplyBatchItem(String correlationID, long aggregationID, HospitalCostsReply reply) {
+        this(correlationID, aggregationID, reply, DEFAULT_PRIORITY);
+    }
+
+    public HospitalCostsReplyBatchItem(String correlationID, long aggregationID, HospitalCostsReply reply, int priority) {
+        this.correlationID = correlationID;
+        this.aggregationID = aggregationID;
+        this.reply = reply;
+        this.priority = priority;
+    }
+
+    public String getCorrelationID() {
+        return correlationID;
+    }
+
+    public long getAggregationID() {
+        return aggregationID;
+    }
+
+    public HospitalCostsReply getReply() {
+        return reply;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof HospitalCostsReplyBatchItem)) return false;
+        HospitalCostsReplyBatchItem that = (HospitalCostsReplyBatchItem) o;
+        return aggregationID == that.aggregationID
+                && priority == that.priority
+                && Objects.equals(correlationID, that.correlationID)
+                && Objects.equals(reply, that.reply);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Objects.hashCode(correlationID);
+        result = 31 * result + Long.hashCode(aggregationID);
+        result = 31 * result + Objects.hashCode(reply);
+        result = 31 * result + priority;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + correlationID + "]-[" + aggregationID + "]-" + reply;
+    }
+}
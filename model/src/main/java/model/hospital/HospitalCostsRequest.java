@@ -0,0 +1,54 @@
+package model.hospital;
+
+import java.util.Objects;
+
+/**
+ * Immutable request of the broker to a hospital for the costs of a treatment
+ */
+public final class HospitalCostsRequest {
+
+    private final int ssn; // social security number
+    private final int age;
+    private final String treatmentCode;
+
+    public HospitalCostsRequest(int ssn, String treatmentCode, int age) {
+        this.ssn = ssn;
+        this.treatmentCode = treatmentCode != null ? treatmentCode.intern() : null;
+        this.age = age;
+    }
+
+    public int getSsn() {
+        return ssn;
+    }
+
+    public int getAge() {
+        return age;
+    }
+
+    public String getTreatmentCode() {
+        return treatmentCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof HospitalCostsRequest)) return false;
+        HospitalCostsRequest that = (HospitalCostsRequest) o;
+        return ssn == that.ssn
+                && age == that.age
+                && Objects.equals(treatmentCode, that.treatmentCode);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = ssn;
+        result = 31 * result + age;
+        result = 31 * result + Objects.hashCode(treatmentCode);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "["+ssn + "]-[" + treatmentCode+"]";
+    }
+}
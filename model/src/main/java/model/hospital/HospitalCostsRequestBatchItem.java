@@ -0,0 +1,73 @@
+package model.hospital;
+
+import java.util.Objects;
+
+/**
+ * Immutable HospitalCostsRequest in a batch message,
+ * together with the IDs it is correlated with and its JMSPriority,
+ * a batch message is sent with the highest JMSPriority of its items
+ */
+public final class HospitalCostsRequestBatchItem {
+
+    /**
+     * Store the JMSPriority of an item whose priority is not known, which is the JMS default
+     */
+    public static final int DEFAULT_PRIORITY = 4;
+
+    private final String correlationID;
+    private final long aggregationID;
+    private final HospitalCostsRequest request;
+    private final int priority;
+
+    public HospitalCostsRequestBatchItem(String correlationID, long aggregationID, HospitalCostsRequest request) {
+        this(correlationID, aggregationID, request, DEFAULT_PRIORITY);
+    }
+
+    public HospitalCostsRequestBatchItem(String correlationID, long aggregationID, HospitalCostsRequest request, int priority) {
+        this.correlationID = correlationID;
+        this.aggregationID = aggregationID;
+        this.request = request;
+        this.priority = priority;
+    }
+
+    public String getCorrelationID() {
+        return correlationID;
+    }
+
+    public long getAggregationID() {
+        return aggregationID;
+    }
+
+    public HospitalCostsRequest getRequest() {
+        return request;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof HospitalCostsRequestBatchItem)) return false;
+        HospitalCostsRequestBatchItem that = (HospitalCostsRequestBatchItem) o;
+        return aggregationID == that.aggregationID
+                && priority == that.priority
+                && Objects.equals(correlationID, that.correlationID)
+                && Objects.equals(request, that.request);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Objects.hashCode(correlationID);
+        result = 31 * result + Long.hashCode(aggregationID);
+        result = 31 * result + Objects.hashCode(request);
+        result = 31 * result + priority;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + correlationID + "]-[" + aggregationID + "]-" + request;
+    }
+}
@@ -0,0 +1,51 @@
+package model.messaging;
+
+/**
+ * A class that provides the URL every Producer and Consumer connects to the JMS broker with.
+ * The failover transport reconnects when the connection is lost, starting after 10 ms and
+ * doubling the delay up to 1 s, and then registers the sessions, the consumers and their
+ * message listeners again and replays the messages that were not yet acknowledged.
+ * Sends are not buffered: while the JMS broker cannot be reached, a send waits for the
+ * reconnect for at most 3 s and then fails with a JMSException, so no thread hangs on it
+ * and the DeadLetterChannel can retry the message. The same bound applies to creating
+ * a session or a consumer, so a Producer or Consumer that cannot reach the JMS broker
+ * throws a JMSException from its constructor. The URL can be replaced by setting
+ * the jms.provider.url system property, e.g. to connect to another host.
+ */
+public final class JmsProvider {
+
+    /**
+     * Store the name of the system property that replaces the default URL
+     */
+    public static final String PROVIDER_URL_PROPERTY = "jms.provider.url";
+
+    /**
+     * Store the default URL of the JMS broker
+     */
+    public static final String DEFAULT_PROVIDER_URL = "failover:(tcp://localhost:61616)"
+            + "?initialReconnectDelay=10&maxReconnectDelay=1000&useExponentialBackOff=true"
+            + "&trackMessages=true&timeout=3000";
+
+    private JmsProvider() {}
+
+    /**
+     * Method that returns the URL of the JMS broker
+     *
+     * @return the URL of the system property, or the default URL if it is not set
+     */
+    public static String getProviderUrl() {
+        return System.getProperty(PROVIDER_URL_PROPERTY, DEFAULT_PROVIDER_URL);
+    }
+
+    /**
+     * Method that returns the URL of the JMS broker with additional options,
+     * e.g. the jms.* options of the connection factory
+     *
+     * @param options the options to append, separated by &amp;
+     * @return the URL of the JMS broker with the options
+     */
+    public static String getProviderUrl(String options) {
+        String providerUrl = getProviderUrl();
+        return providerUrl + (providerUrl.indexOf('?') < 0 ? '?' : '&') + options;
+    }
+}
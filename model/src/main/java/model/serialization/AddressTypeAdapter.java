@@ -0,0 +1,41 @@
+package model.serialization;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import model.hospital.Address;
+
+import java.io.IOException;
+
+/**
+ * Streaming TypeAdapter that (de)serializes an Address without reflection
+ */
+final class AddressTypeAdapter extends TypeAdapter<Address> {
+
+    @Override
+    public void write(JsonWriter out, Address address) throws IOException {
+        out.beginObject();
+        out.name("street").value(address.getStreet());
+        out.name("number").value(address.getNumber());
+        out.name("city").value(address.getCity());
+        out.endObject();
+    }
+
+    @Override
+    public Address read(JsonReader in) throws IOException {
+        String street = null;
+        int number = 0;
+        String city = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "street": street = ModelSerializer.nextString(in); break;
+                case "number": number = in.nextInt(); break;
+                case "city": city = ModelSerializer.nextString(in); break;
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        return new Address(street, number, city);
+    }
+}
@@ -0,0 +1,57 @@
+package model.serialization;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import model.hospital.HospitalCostsReply;
+import model.hospital.HospitalCostsReplyBatchItem;
+
+import java.io.IOException;
+
+/**
+ * Streaming TypeAdapter that (de)serializes a HospitalCostsReplyBatchItem without reflection
+ */
+final class HospitalCostsReplyBatchItemTypeAdapter extends TypeAdapter<HospitalCostsReplyBatchItem> {
+
+    private final HospitalCostsReplyTypeAdapter replyTypeAdapter = new HospitalCostsReplyTypeAdapter();
+
+    @Override
+    public void write(JsonWriter out, HospitalCostsReplyBatchItem batchItem) throws IOException {
+        out.beginObject();
+        out.name("correlationID").value(batchItem.getCorrelationID());
+        out.name("aggregationID").value(batchItem.getAggregationID());
+        out.name("priority").value(batchItem.getPriority());
+        if (batchItem.getReply() != null) {
+            out.name("reply");
+            this.replyTypeAdapter.write(out, batchItem.getReply());
+        }
+        out.endObject();
+    }
+
+    @Override
+    public HospitalCostsReplyBatchItem read(JsonReader in) throws IOException {
+        String correlationID = null;
+        long aggregationID = 0;
+        int priority = HospitalCostsReplyBatchItem.DEFAULT_PRIORITY;
+        HospitalCostsReply reply = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "correlationID": correlationID = ModelSerializer.nextString(in); break;
+                case "aggregationID": aggregationID = in.nextLong(); break;
+                case "priority": priority = in.nextInt(); break;
+                case "reply":
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                    } else {
+                        reply = this.replyTypeAdapter.read(in);
+                    }
+                    break;
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        return new HospitalCostsReplyBatchItem(correlationID, aggregationID, reply, priority);
+    }
+}
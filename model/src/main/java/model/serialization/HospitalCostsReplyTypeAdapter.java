@@ -0,0 +1,54 @@
+package model.serialization;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import model.hospital.Address;
+import model.hospital.HospitalCostsReply;
+
+import java.io.IOException;
+
+/**
+ * Streaming TypeAdapter that (de)serializes a HospitalCostsReply without reflection
+ */
+final class HospitalCostsReplyTypeAdapter extends TypeAdapter<HospitalCostsReply> {
+
+    private final AddressTypeAdapter addressTypeAdapter = new AddressTypeAdapter();
+
+    @Override
+    public void write(JsonWriter out, HospitalCostsReply hospitalCostsReply) throws IOException {
+        out.beginObject();
+        out.name("price").value(hospitalCostsReply.getPrice());
+        out.name("hospitalName").value(hospitalCostsReply.getHospitalName());
+        if (hospitalCostsReply.getAddress() != null) {
+            out.name("address");
+            this.addressTypeAdapter.write(out, hospitalCostsReply.getAddress());
+        }
+        out.endObject();
+    }
+
+    @Override
+    public HospitalCostsReply read(JsonReader in) throws IOException {
+        double price = 0;
+        String hospitalName = null;
+        Address address = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "price": price = in.nextDouble(); break;
+                case "hospitalName": hospitalName = ModelSerializer.nextString(in); break;
+                case "address":
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                    } else {
+                        address = this.addressTypeAdapter.read(in);
+                    }
+                    break;
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        return new HospitalCostsReply(price, hospitalName, address);
+    }
+}
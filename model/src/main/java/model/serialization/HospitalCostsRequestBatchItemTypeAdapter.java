@@ -0,0 +1,57 @@
+package model.serialization;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import model.hospital.HospitalCostsRequest;
+import model.hospital.HospitalCostsRequestBatchItem;
+
+import java.io.IOException;
+
+/**
+ * Streaming TypeAdapter that (de)serializes a HospitalCostsRequestBatchItem without reflection
+ */
+final class HospitalCostsRequestBatchItemTypeAdapter extends TypeAdapter<HospitalCostsRequestBatchItem> {
+
+    private final HospitalCostsRequestTypeAdapter requestTypeAdapter = new HospitalCostsRequestTypeAdapter();
+
+    @Override
+    public void write(JsonWriter out, HospitalCostsRequestBatchItem batchItem) throws IOException {
+        out.beginObject();
+        out.name("correlationID").value(batchItem.getCorrelationID());
+        out.name("aggregationID").value(batchItem.getAggregationID());
+        out.name("priority").value(batchItem.getPriority());
+        if (batchItem.getRequest() != null) {
+            out.name("request");
+            this.requestTypeAdapter.write(out, batchItem.getRequest());
+        }
+        out.endObject();
+    }
+
+    @Override
+    public HospitalCostsRequestBatchItem read(JsonReader in) throws IOException {
+        String correlationID = null;
+        long aggregationID = 0;
+        int priority = HospitalCostsRequestBatchItem.DEFAULT_PRIORITY;
+        HospitalCostsRequest request = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "correlationID": correlationID = ModelSerializer.nextString(in); break;
+                case "aggregationID": aggregationID = in.nextLong(); break;
+                case "priority": priority = in.nextInt(); break;
+                case "request":
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                    } else {
+                        request = this.requestTypeAdapter.read(in);
+                    }
+                    break;
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        return new HospitalCostsRequestBatchItem(correlationID, aggregationID, request, priority);
+    }
+}
@@ -0,0 +1,41 @@
+package model.serialization;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import model.hospital.HospitalCostsRequest;
+
+import java.io.IOException;
+
+/**
+ * Streaming TypeAdapter that (de)serializes a HospitalCostsRequest without reflection
+ */
+final class HospitalCostsRequestTypeAdapter extends TypeAdapter<HospitalCostsRequest> {
+
+    @Override
+    public void write(JsonWriter out, HospitalCostsRequest hospitalCostsRequest) throws IOException {
+        out.beginObject();
+        out.name("ssn").value(hospitalCostsRequest.getSsn());
+        out.name("age").value(hospitalCostsRequest.getAge());
+        out.name("treatmentCode").value(hospitalCostsRequest.getTreatmentCode());
+        out.endObject();
+    }
+
+    @Override
+    public HospitalCostsRequest read(JsonReader in) throws IOException {
+        int ssn = 0;
+        int age = 0;
+        String treatmentCode = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "ssn": ssn = in.nextInt(); break;
+                case "age": age = in.nextInt(); break;
+                case "treatmentCode": treatmentCode = ModelSerializer.nextString(in); break;
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        return new HospitalCostsRequest(ssn, treatmentCode, age);
+    }
+}
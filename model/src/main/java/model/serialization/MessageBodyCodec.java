@@ -0,0 +1,95 @@
+package model.serialization;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A class that compresses and decompresses message bodies with DEFLATE. A compressed
+ * body is sent as the bytes of a JMS BytesMessage, and the codec property of the
+ * message tells the receiver how to decompress it.
+ */
+public final class MessageBodyCodec {
+
+    /**
+     * Store the name of the message property with the codec
+     * and the value of that property for DEFLATE
+     */
+    public static final String CODEC_PROPERTY = "codec";
+    public static final String DEFLATE_CODEC = "deflate";
+
+    /**
+     * Store the size of the buffer used while (de)compressing
+     */
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * Store the default maximum size of a decompressed message body in bytes, which is far
+     * above the largest batch the gateways send, so that a small compressed body
+     * cannot expand into an unbounded amount of memory
+     */
+    public static final int DEFAULT_MAX_MESSAGE_BODY_BYTES = 1 << 20;
+
+    private MessageBodyCodec() {}
+
+    /**
+     * Method that compresses a message body with DEFLATE
+     *
+     * @param messageBody the message body to compress
+     * @return the compressed UTF-8 bytes of the message body
+     */
+    public static byte[] compress(String messageBody) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            byte[] input = messageBody.getBytes(StandardCharsets.UTF_8);
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(64, input.length / 4));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Method that decompresses a message body that was compressed with DEFLATE
+     *
+     * @param compressedMessageBody the compressed bytes
+     * @param maxMessageBodyBytes the maximum size of the decompressed message body in bytes
+     * @return the message body
+     * @throws IllegalArgumentException if the bytes are not valid DEFLATE data
+     *                                  or decompress to more than the maximum size
+     */
+    public static String decompress(byte[] compressedMessageBody, int maxMessageBodyBytes)
+            throws IllegalArgumentException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressedMessageBody);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(
+                    (int) Math.min(compressedMessageBody.length * 4L, maxMessageBodyBytes));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Compressed message body is truncated.");
+                }
+                if (inflater.getBytesWritten() > maxMessageBodyBytes) {
+                    throw new IllegalArgumentException(
+                            "Compressed message body exceeds " + maxMessageBodyBytes + " bytes.");
+                }
+                output.write(buffer, 0, length);
+            }
+            return new String(output.toByteArray(), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Compressed message body is invalid.", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
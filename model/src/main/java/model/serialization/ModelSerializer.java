@@ -0,0 +1,66 @@
+package model.serialization;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import model.client.TreatmentCostsReply;
+import model.client.TreatmentCostsRequest;
+import model.hospital.Address;
+import model.hospital.HospitalCostsReply;
+import model.hospital.HospitalCostsReplyBatchItem;
+import model.hospital.HospitalCostsRequest;
+import model.hospital.HospitalCostsRequestBatchItem;
+
+import java.io.IOException;
+
+/**
+ * A class that provides the Gson object shared by all gateways. Every model class
+ * is (de)serialized by a streaming TypeAdapter instead of reflection, and objects
+ * are created through their constructors, so their strings are interned.
+ * Gson is thread safe, so the same instance can be used by every thread.
+ */
+public final class ModelSerializer {
+
+    /**
+     * Store the shared Gson object with a TypeAdapter for every model class
+     */
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(TreatmentCostsRequest.class, new TreatmentCostsRequestTypeAdapter().nullSafe())
+            .registerTypeAdapter(TreatmentCostsReply.class, new TreatmentCostsReplyTypeAdapter().nullSafe())
+            .registerTypeAdapter(HospitalCostsRequest.class, new HospitalCostsRequestTypeAdapter().nullSafe())
+            .registerTypeAdapter(HospitalCostsReply.class, new HospitalCostsReplyTypeAdapter().nullSafe())
+            .registerTypeAdapter(Address.class, new AddressTypeAdapter().nullSafe())
+            .registerTypeAdapter(HospitalCostsRequestBatchItem.class,
+                    new HospitalCostsRequestBatchItemTypeAdapter().nullSafe())
+            .registerTypeAdapter(HospitalCostsReplyBatchItem.class,
+                    new HospitalCostsReplyBatchItemTypeAdapter().nullSafe())
+            .create();
+
+    private ModelSerializer() {}
+
+    /**
+     * Method that returns the shared Gson object
+     *
+     * @return Gson that (de)serializes all model classes
+     */
+    public static Gson getGson() {
+        return GSON;
+    }
+
+    /**
+     * Method that reads a string value that may be null, shared by the TypeAdapters
+     * and the streaming deserializers of the gateways
+     *
+     * @param in the reader positioned at the value
+     * @return the string, or null if the value is null
+     * @throws IOException if the value cannot be read
+     */
+    public static String nextString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+}
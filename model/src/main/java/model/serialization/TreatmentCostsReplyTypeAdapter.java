@@ -0,0 +1,52 @@
+package model.serialization;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import model.client.TreatmentCostsReply;
+
+import java.io.IOException;
+
+/**
+ * Streaming TypeAdapter that (de)serializes a TreatmentCostsReply without reflection
+ */
+final class TreatmentCostsReplyTypeAdapter extends TypeAdapter<TreatmentCostsReply> {
+
+    @Override
+    public void write(JsonWriter out, TreatmentCostsReply treatmentCostsReply) throws IOException {
+        out.beginObject();
+        out.name("hospitalPrice").value(treatmentCostsReply.getHospitalPrice());
+        out.name("transportPrice").value(treatmentCostsReply.getTransportPrice());
+        out.name("hospitalName").value(treatmentCostsReply.getHospitalName());
+        // only a busy or unavailable reply carries its flag, so a normal reply looks the same as before
+        if (treatmentCostsReply.isBusy()) {
+            out.name("busy").value(true);
+        }
+        if (treatmentCostsReply.isUnavailable()) {
+            out.name("unavailable").value(true);
+        }
+        out.endObject();
+    }
+
+    @Override
+    public TreatmentCostsReply read(JsonReader in) throws IOException {
+        double hospitalPrice = 0;
+        double transportPrice = 0;
+        String hospitalName = null;
+        boolean busy = false;
+        boolean unavailable = false;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "hospitalPrice": hospitalPrice = in.nextDouble(); break;
+                case "transportPrice": transportPrice = in.nextDouble(); break;
+                case "hospitalName": hospitalName = ModelSerializer.nextString(in); break;
+                case "busy": busy = in.nextBoolean(); break;
+                case "unavailable": unavailable = in.nextBoolean(); break;
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        return new TreatmentCostsReply(hospitalPrice, transportPrice, hospitalName, busy, unavailable);
+    }
+}
@@ -0,0 +1,65 @@
+package model.serialization;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import model.client.QuotePriority;
+import model.client.TreatmentCostsRequest;
+
+import java.io.IOException;
+
+/**
+ * Streaming TypeAdapter that (de)serializes a TreatmentCostsRequest without reflection
+ */
+final class TreatmentCostsRequestTypeAdapter extends TypeAdapter<TreatmentCostsRequest> {
+
+    @Override
+    public void write(JsonWriter out, TreatmentCostsRequest treatmentCostsRequest) throws IOException {
+        out.beginObject();
+        out.name("ssn").value(treatmentCostsRequest.getSsn());
+        out.name("age").value(treatmentCostsRequest.getAge());
+        out.name("treatmentCode").value(treatmentCostsRequest.getTreatmentCode());
+        out.name("transportDistance").value(treatmentCostsRequest.getTransportDistance());
+        // only a request with a priority class carries it, so other requests look the same as before
+        if (treatmentCostsRequest.getPriority() != null) {
+            out.name("priority").value(treatmentCostsRequest.getPriority().name());
+        }
+        out.endObject();
+    }
+
+    @Override
+    public TreatmentCostsRequest read(JsonReader in) throws IOException {
+        int ssn = 0;
+        int age = 0;
+        String treatmentCode = null;
+        int transportDistance = 0;
+        QuotePriority priority = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "ssn": ssn = in.nextInt(); break;
+                case "age": age = in.nextInt(); break;
+                case "treatmentCode": treatmentCode = ModelSerializer.nextString(in); break;
+                case "transportDistance": transportDistance = in.nextInt(); break;
+                case "priority": priority = parsePriority(ModelSerializer.nextString(in)); break;
+                default: in.skipValue();
+            }
+        }
+        in.endObject();
+        return new TreatmentCostsRequest(ssn, age, treatmentCode, transportDistance, priority);
+    }
+
+    /**
+     * Method that parses a priority class, an unknown one is left to the broker to classify
+     *
+     * @param name the name of the priority class
+     * @return QuotePriority with the name, or null if there is none
+     */
+    private static QuotePriority parsePriority(String name) {
+        if (name == null) return null;
+        for (QuotePriority priority : QuotePriority.values()) {
+            if (priority.name().equalsIgnoreCase(name)) return priority;
+        }
+        return null;
+    }
+}